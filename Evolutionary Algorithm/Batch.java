@@ -0,0 +1,160 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the algorithm for many images in one program.
+ * Several images are processed at once, and all of them evaluate populations
+ * in the same pool of threads, so threads and the compiled code are reused between images.
+ * <p>
+ * Images are given by the folder with .jpg files or by the manifest file.
+ * Each line of the manifest is the path of the image and optional parameters of its run:
+ * <pre>
+ * # comment
+ * images/cat.jpg
+ * images/dog.jpg amountOfGenerations=1000 outputFormat=gif
+ * </pre>
+ * Paths are relative to the folder of the manifest.
+ * Names of parameters are the names of variables in the Main class, see {@link Parameters}.
+ * Results are written to the same folders as results of the Main class.
+ */
+public class Batch {
+
+    /**
+     * @param args folder with images or the manifest file,
+     *             and optionally the number of images which are processed at once
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java Batch <folder or manifest> [number of images processed at once]");
+            return;
+        }
+
+        List<Parameters> runs;
+        try {
+            runs = readRuns(new File(args[0]));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Images can't be read: " + e.getMessage());
+            return;
+        }
+        int amountOfJobs = Main.amountOfThreads;
+        if (args.length > 1) {
+            try {
+                amountOfJobs = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                amountOfJobs = 0;
+            }
+            if (amountOfJobs <= 0) {
+                System.out.println("Wrong number of images processed at once: " + args[1]);
+                return;
+            }
+        }
+
+        // Threads for the evaluation of populations of all images
+        ForkJoinPool pool = Main.amountOfThreads > 1 ? new ForkJoinPool(Main.amountOfThreads) : null;
+        // Threads which run the algorithm for images
+        ExecutorService jobs = Executors.newFixedThreadPool(Math.max(Math.min(amountOfJobs, runs.size()), 1));
+
+        for (Parameters parameters : runs) {
+            EvolutionaryAlgorithm algorithm = new EvolutionaryAlgorithm(parameters, pool, true);
+            jobs.execute(() -> {
+                try {
+                    algorithm.run();
+                    System.out.println(parameters.getInputImageName() + ": finished");
+                } catch (RuntimeException e) {
+                    System.out.println(parameters.getInputImageName() + ": failed: " + e);
+                }
+            });
+        }
+
+        jobs.shutdown();
+        try {
+            jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Get parameters of runs for all images of the folder or the manifest
+     *
+     * @throws IllegalArgumentException if the manifest has wrong parameters or images have the same names
+     */
+    private static List<Parameters> readRuns(File file) throws IOException {
+        ArrayList<Parameters> runs = new ArrayList<>();
+
+        if (file.isDirectory()) {
+            File[] images = file.listFiles((folder, name) -> name.toLowerCase().endsWith(".jpg"));
+            if (images == null) {
+                throw new IOException("Folder " + file + " can't be read");
+            }
+            Arrays.sort(images);
+            for (File image : images) {
+                runs.add(new Parameters(getName(image), image.getPath()));
+            }
+        } else {
+            File folder = file.getAbsoluteFile().getParentFile();
+            List<String> lines = Files.readAllLines(file.toPath());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] words = line.split("\\s+");
+                File image = new File(words[0]);
+                if (!image.isAbsolute()) {
+                    image = new File(folder, words[0]);
+                }
+                Parameters parameters = new Parameters(getName(image), image.getPath());
+                for (int j = 1; j < words.length; j++) {
+                    int separator = words[j].indexOf('=');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": parameter " + words[j] + " has no value");
+                    }
+                    try {
+                        parameters.set(words[j].substring(0, separator), words[j].substring(separator + 1));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+                    }
+                }
+                try {
+                    parameters.validate();
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+                }
+                runs.add(parameters);
+            }
+        }
+
+        // Output files are named by images
+        HashSet<String> names = new HashSet<>();
+        for (Parameters parameters : runs) {
+            if (!names.add(parameters.getInputImageName())) {
+                throw new IllegalArgumentException("There are several images with the name " + parameters.getInputImageName()
+                        + ", set the inputImageName parameter for them");
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Get the name of the image file without the extension
+     */
+    private static String getName(File image) {
+        String name = image.getName();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Chooses blocks for mutations in proportion to their errors,
+ * so blocks which are far from the source image are mutated more often than blocks which already match it.
+ * With the probability of the exploration floor the block is chosen uniformly,
+ * so each block still has the chance to be mutated.
+ * <p>
+ * Errors are kept in the Fenwick tree (binary indexed tree), where each node keeps the sum of the range of blocks.
+ * The change of one error and the choice of the block take O(log n) operations,
+ * and the sampler is updated only by blocks whose errors differ from the previous chromosome.
+ * Errors of RMSD are integers, so its sums don't lose precision after many updates.
+ * Errors of other metrics are fractions, and each update rounds sums a little,
+ * so the tree is built again from errors of blocks after the number of updates.
+ * <p>
+ * The sampler belongs to the single lineage and is used by one thread.
+ */
+public class BlockSampler {
+    // Number of updates after which sums of fractional errors are calculated again
+    static final int REBUILD_PERIOD = 256;
+
+    private final double explorationFloor;
+    // Whether errors are integers and sums are always exact
+    private final boolean exact;
+    // Errors of blocks from the last update
+    private final double[] errors;
+    // Fenwick tree, the node i keeps the sum of errors of blocks (i - (i & -i), i]
+    private final double[] tree;
+    // The highest power of two which is not greater than the number of blocks
+    private final int highestBit;
+    private double totalError;
+    // Number of updates since the tree was built
+    private int updates;
+
+    /**
+     * @param amountOfBlocks   number of blocks of chromosomes
+     * @param explorationFloor probability to choose the block uniformly, from 0 to 1
+     * @param metric           kind of the metric of errors
+     */
+    BlockSampler(int amountOfBlocks, double explorationFloor, Metric.Kind metric) {
+        this.explorationFloor = explorationFloor;
+        this.exact = metric == Metric.Kind.RMSD;
+        errors = new double[amountOfBlocks];
+        tree = new double[amountOfBlocks + 1];
+        highestBit = Integer.highestOneBit(amountOfBlocks);
+    }
+
+    /**
+     * Update errors of blocks which are changed since the last update
+     *
+     * @param blockErrors errors of blocks of the evaluated chromosome, or null if they are not calculated
+     */
+    public void update(double[] blockErrors) {
+        if (blockErrors == null) {
+            return;
+        }
+        for (int block = 0; block < errors.length; block++) {
+            double change = blockErrors[block] - errors[block];
+            if (change != 0) {
+                errors[block] = blockErrors[block];
+                totalError += change;
+                for (int i = block + 1; i < tree.length; i += i & -i) {
+                    tree[i] += change;
+                }
+            }
+        }
+
+        if (!exact && ++updates >= REBUILD_PERIOD) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Build the tree from errors of blocks in O(n), so the rounding of previous updates is dropped
+     */
+    private void rebuild() {
+        updates = 0;
+        totalError = 0;
+        for (int i = 1; i < tree.length; i++) {
+            totalError += errors[i - 1];
+            tree[i] = errors[i - 1];
+        }
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Choose the block to mutate
+     *
+     * @param random source of random numbers
+     * @return index of the block y * blockNumbersX + x
+     */
+    public int nextBlock(RandomSource random) {
+        if (totalError <= 0 || random.nextDouble() < explorationFloor) {
+            return random.nextInt(0, errors.length);
+        }
+
+        // Find the first block whose cumulative error is greater than the random value
+        double value = random.nextDouble() * totalError;
+        int position = 0;
+        for (int bit = highestBit; bit > 0; bit >>= 1) {
+            int next = position + bit;
+            if (next < tree.length && tree[next] <= value) {
+                position = next;
+                value -= tree[next];
+            }
+        }
+        return Math.min(position, errors.length - 1);
+    }
+}
@@ -1,18 +1,26 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 /**
  * Helpful class for common static calculation methods
  */
 public class Calculation {
 
-    // Set of colors
-    public static ArrayList<Color> colorPalette;
+    // Several algorithms can run at once in different threads,
+    // so the set of colors belongs to the thread of the algorithm.
+    // Threads which only evaluate chromosomes don't use it.
 
-    public static int getRandomNumber(int min, int max) {
-        return (int) ((Math.random() * (max - min)) + min);
+    // Set of packed RGB colors
+    private static final ThreadLocal<int[]> colorPalette = new ThreadLocal<>();
+
+    public static int[] getColorPalette() {
+        return colorPalette.get();
+    }
+
+    public static void setColorPalette(int[] colors) {
+        colorPalette.set(colors);
     }
 
     /**
@@ -26,55 +34,262 @@ public class Calculation {
      * Calculate RMSD for the particular block of pixels of images
      */
     public static double calculateRootMeanSquareDeviation(BufferedImage firstImage, BufferedImage secondImage, int startX, int startY, int endX, int endY) {
-        double sum = 0;
-        for (int x = startX; x < endX; x++) {
-            for (int y = startY; y < endY; y++) {
-                Color colorFirstImage = new Color(firstImage.getRGB(x, y));
-                Color colorSecondImage = new Color(secondImage.getRGB(x, y));
+        double sum = calculateSquaredError(firstImage, secondImage, startX, startY, endX, endY);
+        sum /= ((endX - startX) * (endY - startY));
+        sum = Math.sqrt(sum);
 
-                int redDiff = colorFirstImage.getRed() - colorSecondImage.getRed();
-                int greenDiff = colorFirstImage.getGreen() - colorSecondImage.getGreen();
-                int blueDiff = colorFirstImage.getBlue() - colorSecondImage.getBlue();
+        return sum;
+    }
+
+    /**
+     * Calculate the sum of squared differences of color components
+     * for the particular block of pixels of images.
+     * The sum consists of integers only, so it is exact and can be
+     * safely combined with the sums of other blocks.
+     */
+    public static double calculateSquaredError(BufferedImage firstImage, BufferedImage secondImage, int startX, int startY, int endX, int endY) {
+        int offset = startY * firstImage.getWidth() + startX;
+        return calculateSquaredError(getPixels(firstImage), offset, firstImage.getWidth(),
+                getPixels(secondImage), offset, secondImage.getWidth(), endX - startX, endY - startY);
+    }
+
+    /**
+     * Calculate the sum of squared differences of color components
+     * for the blocks of packed RGB pixels of the same size,
+     * which can be placed in different positions of the images
+     *
+     * @param first        pixels of the first image
+     * @param firstOffset  index of the top left pixel of the block in the first image
+     * @param firstWidth   width of the first image
+     * @param second       pixels of the second image
+     * @param secondOffset index of the top left pixel of the block in the second image
+     * @param secondWidth  width of the second image
+     * @param width        width of the block
+     * @param height       height of the block
+     */
+    public static double calculateSquaredError(int[] first, int firstOffset, int firstWidth,
+                                               int[] second, int secondOffset, int secondWidth, int width, int height) {
+        long sum = 0;
+        for (int y = 0; y < height; y++) {
+            int firstIndex = firstOffset + y * firstWidth;
+            int secondIndex = secondOffset + y * secondWidth;
+            for (int x = 0; x < width; x++) {
+                int firstColor = first[firstIndex + x];
+                int secondColor = second[secondIndex + x];
+
+                int redDiff = ((firstColor >> 16) & 0xFF) - ((secondColor >> 16) & 0xFF);
+                int greenDiff = ((firstColor >> 8) & 0xFF) - ((secondColor >> 8) & 0xFF);
+                int blueDiff = (firstColor & 0xFF) - (secondColor & 0xFF);
 
                 sum += redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff;
             }
         }
-        sum /= ((endX - startX) * (endY - startY));
-        sum = Math.sqrt(sum);
 
         return sum;
     }
 
     /**
-     * Get set of colors which are used in given image
+     * Get the packed RGB pixels of the image.
+     * The image must be of the BufferedImage.TYPE_INT_RGB type,
+     * so the pixels are its own data, not a copy.
      */
-    public static void calculateColorPalette(BufferedImage image) {
-        HashSet<Integer> colors = new HashSet<>();
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                colors.add(image.getRGB(x, y));
+    public static int[] getPixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Convert the image to the BufferedImage.TYPE_INT_RGB type
+     */
+    public static BufferedImage toPackedRGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage packedImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = packedImage.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return packedImage;
+    }
+
+    /**
+     * Calculate the set of colors which represent the given image.
+     * The image is quantized by the median cut algorithm:
+     * its pixels are divided into boxes, each time the box with the largest range of a color component
+     * is divided by the median of this component, and the color of the box is the average color of its pixels.
+     *
+     * @param size number of colors, or 0 to take all colors which are used in the image
+     */
+    public static void calculateColorPalette(BufferedImage image, int size) {
+        int[] pixels = getPixels(image).clone();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xFFFFFF;
+        }
+
+        if (size <= 0) {
+            // All different colors of the image
+            Arrays.sort(pixels);
+            int colors = 0;
+            for (int i = 0; i < pixels.length; i++) {
+                if (i == 0 || pixels[i] != pixels[i - 1]) {
+                    pixels[colors++] = pixels[i];
+                }
             }
+            colorPalette.set(Arrays.copyOf(pixels, colors));
+            return;
         }
 
-        colorPalette = new ArrayList<>(colors.size());
-        for (Integer element : colors) {
-            colorPalette.add(new Color(element));
+        // Boxes are parts [from, to) of the pixels array,
+        // range and shift are the largest range of a color component of the box and the shift of this component
+        int[] from = new int[size];
+        int[] to = new int[size];
+        int[] range = new int[size];
+        int[] shift = new int[size];
+        int[] buffer = new int[pixels.length];
+        int boxes = 1;
+        to[0] = pixels.length;
+        setLargestRange(pixels, 0, from, to, range, shift);
+
+        while (boxes < size) {
+            int box = 0;
+            for (int i = 1; i < boxes; i++) {
+                if (range[i] > range[box]) {
+                    box = i;
+                }
+            }
+            // Each box has the single color
+            if (range[box] == 0) {
+                break;
+            }
+
+            sortByComponent(pixels, from[box], to[box], shift[box], buffer);
+            int median = getSplitPosition(pixels, from[box], to[box], shift[box]);
+            from[boxes] = median;
+            to[boxes] = to[box];
+            to[box] = median;
+            setLargestRange(pixels, box, from, to, range, shift);
+            setLargestRange(pixels, boxes, from, to, range, shift);
+            boxes++;
+        }
+
+        int[] palette = new int[boxes];
+        for (int i = 0; i < boxes; i++) {
+            long red = 0;
+            long green = 0;
+            long blue = 0;
+            for (int j = from[i]; j < to[i]; j++) {
+                red += (pixels[j] >> 16) & 0xFF;
+                green += (pixels[j] >> 8) & 0xFF;
+                blue += pixels[j] & 0xFF;
+            }
+            int count = to[i] - from[i];
+            palette[i] = (int) ((red + count / 2) / count) << 16
+                    | (int) ((green + count / 2) / count) << 8
+                    | (int) ((blue + count / 2) / count);
+        }
+        colorPalette.set(palette);
+    }
+
+    /**
+     * Find the color component with the largest range of values in the box
+     */
+    private static void setLargestRange(int[] pixels, int box, int[] from, int[] to, int[] range, int[] shift) {
+        range[box] = -1;
+        for (int componentShift = 0; componentShift <= 16; componentShift += 8) {
+            int min = 255;
+            int max = 0;
+            for (int i = from[box]; i < to[box]; i++) {
+                int value = (pixels[i] >> componentShift) & 0xFF;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > range[box]) {
+                range[box] = max - min;
+                shift[box] = componentShift;
+            }
+        }
+    }
+
+    /**
+     * Find the position near the median of sorted pixels [from, to) which doesn't divide equal values of the component,
+     * so the same color never gets into two boxes and the palette has no duplicates.
+     * The box has at least two values of the component, so the position is always inside the box.
+     */
+    private static int getSplitPosition(int[] pixels, int from, int to, int shift) {
+        int median = (from + to) >>> 1;
+        int value = (pixels[median] >> shift) & 0xFF;
+        int lower = median;
+        while (lower > from && ((pixels[lower - 1] >> shift) & 0xFF) == value) {
+            lower--;
+        }
+        int upper = median;
+        while (upper < to && ((pixels[upper] >> shift) & 0xFF) == value) {
+            upper++;
+        }
+        if (lower == from) {
+            return upper;
+        }
+        if (upper == to) {
+            return lower;
+        }
+        return median - lower <= upper - median ? lower : upper;
+    }
+
+    /**
+     * Sort pixels [from, to) by the color component with the counting sort
+     */
+    private static void sortByComponent(int[] pixels, int from, int to, int shift, int[] buffer) {
+        int[] positions = new int[257];
+        for (int i = from; i < to; i++) {
+            positions[((pixels[i] >> shift) & 0xFF) + 1]++;
+        }
+        for (int i = 1; i < positions.length; i++) {
+            positions[i] += positions[i - 1];
+        }
+        for (int i = from; i < to; i++) {
+            buffer[from + positions[(pixels[i] >> shift) & 0xFF]++] = pixels[i];
+        }
+        System.arraycopy(buffer, from, pixels, from, to - from);
+    }
+
+    /**
+     * Get the color of the palette which is the nearest to the given packed RGB color,
+     * or the given color if the palette is not calculated
+     */
+    public static int getNearestColor(int color) {
+        int[] palette = colorPalette.get();
+        if (palette == null) {
+            return color;
+        }
+
+        int nearestColor = color;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int paletteColor : palette) {
+            int redDiff = ((paletteColor >> 16) & 0xFF) - ((color >> 16) & 0xFF);
+            int greenDiff = ((paletteColor >> 8) & 0xFF) - ((color >> 8) & 0xFF);
+            int blueDiff = (paletteColor & 0xFF) - (color & 0xFF);
+            int distance = redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearestColor = paletteColor;
+            }
         }
+        return nearestColor;
     }
 
     /**
-     * Get randomly color from color palette if it's calculated
+     * Get randomly packed RGB color from color palette if it's calculated
      * or just random color otherwise.
+     * It doesn't create objects.
      */
-    public static Color getRandomColor() {
-        if (colorPalette != null) {
-            int index = getRandomNumber(0, colorPalette.size());
-            return new Color(colorPalette.get(index).getRGB());
+    public static int getRandomColor(RandomSource random) {
+        int[] palette = colorPalette.get();
+        if (palette != null) {
+            return palette[random.nextInt(0, palette.length)];
         }
 
-        int r = getRandomNumber(0, 256);
-        int g = getRandomNumber(0, 256);
-        int b = getRandomNumber(0, 256);
-        return new Color(r, g, b);
+        int r = random.nextInt(0, 256);
+        int g = random.nextInt(0, 256);
+        int b = random.nextInt(0, 256);
+        return (r << 16) | (g << 8) | b;
     }
 }
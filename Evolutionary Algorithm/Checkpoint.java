@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The state of the algorithm which allows to continue it after the restart:
+ * the number of the generation, time, the state of random numbers,
+ * the color palette and the best chromosome.
+ * In the island mode it also keeps the chromosome and the random numbers of each island,
+ * so islands continue exactly as they would without the restart.
+ * <p>
+ * It is saved in the compressed binary file.
+ * The file is written next to the target one and then moved in its place,
+ * so the previous checkpoint stays whole if the program is stopped while saving.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x45414350;
+    private static final int VERSION = 4;
+
+    private final int generation;
+    private final long time;
+    private final long randomState;
+    private final int[] colorPalette;
+    private final Chromosome chromosome;
+    private final RandomSource[] islandRandoms;
+    private final Chromosome[] islandChromosomes;
+
+    /**
+     * @param generation   number of completed generations
+     * @param time         time of the algorithm in nanoseconds
+     * @param randomState  state of random numbers after the generation
+     * @param colorPalette colors of the source image
+     * @param chromosome        best chromosome of the generation
+     * @param islandRandoms     random numbers of islands after the generation, or empty without islands
+     * @param islandChromosomes chromosomes of islands after the generation, or empty without islands
+     */
+    Checkpoint(int generation, long time, long randomState, int[] colorPalette, Chromosome chromosome,
+               RandomSource[] islandRandoms, Chromosome[] islandChromosomes) {
+        this.generation = generation;
+        this.time = time;
+        this.randomState = randomState;
+        this.colorPalette = colorPalette;
+        this.chromosome = chromosome;
+        this.islandRandoms = islandRandoms;
+        this.islandChromosomes = islandChromosomes;
+    }
+
+    /**
+     * Save the checkpoint to the file
+     */
+    public void write(String filePath) throws IOException {
+        java.nio.file.Path target = Paths.get(filePath);
+        java.nio.file.Path temporary = Paths.get(filePath + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(generation);
+            output.writeLong(time);
+            output.writeLong(randomState);
+
+            output.writeInt(colorPalette.length);
+            for (int color : colorPalette) {
+                output.writeInt(color);
+            }
+
+            writeChromosome(output, chromosome, colorPalette);
+
+            output.writeInt(islandChromosomes.length);
+            for (int i = 0; i < islandChromosomes.length; i++) {
+                output.writeLong(islandRandoms[i].getState());
+                output.writeLong(islandRandoms[i].getGamma());
+                writeChromosome(output, islandChromosomes[i], colorPalette);
+            }
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the checkpoint from the file
+     */
+    public static Checkpoint read(String filePath) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(filePath))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("File " + filePath + " is not a checkpoint of this version");
+            }
+            int generation = input.readInt();
+            long time = input.readLong();
+            long randomState = input.readLong();
+
+            int colorsNumber = input.readInt();
+            int[] colorPalette = new int[colorsNumber];
+            for (int i = 0; i < colorsNumber; i++) {
+                colorPalette[i] = input.readInt();
+            }
+
+            Chromosome chromosome = readChromosome(input, colorPalette);
+
+            int amountOfIslands = input.readInt();
+            RandomSource[] islandRandoms = new RandomSource[amountOfIslands];
+            Chromosome[] islandChromosomes = new Chromosome[amountOfIslands];
+            for (int i = 0; i < amountOfIslands; i++) {
+                islandRandoms[i] = new RandomSource(input.readLong(), input.readLong());
+                islandChromosomes[i] = readChromosome(input, colorPalette);
+            }
+            return new Checkpoint(generation, time, randomState, colorPalette, chromosome, islandRandoms, islandChromosomes);
+        }
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getRandomState() {
+        return randomState;
+    }
+
+    public int[] getColorPalette() {
+        return colorPalette;
+    }
+
+    public Chromosome getChromosome() {
+        return chromosome;
+    }
+
+    public RandomSource[] getIslandRandoms() {
+        return islandRandoms;
+    }
+
+    public Chromosome[] getIslandChromosomes() {
+        return islandChromosomes;
+    }
+
+    /**
+     * Write sizes of the chromosome and then its genes packed into one array.
+     * Colors of genes are indexed in the color palette of the checkpoint.
+     */
+    private static void writeChromosome(DataOutputStream output, Chromosome chromosome, int[] colorPalette) throws IOException {
+        output.writeInt(chromosome.getBlockNumbersY());
+        output.writeInt(chromosome.getBlockNumbersX());
+        output.writeInt(chromosome.getBlockSizeY());
+        output.writeInt(chromosome.getBlockSizeX());
+
+        byte[] packed = chromosome.pack(colorPalette);
+        output.writeInt(packed.length);
+        output.write(packed);
+    }
+
+    private static Chromosome readChromosome(DataInputStream input, int[] colorPalette) throws IOException {
+        int blockNumbersY = input.readInt();
+        int blockNumbersX = input.readInt();
+        int blockSizeY = input.readInt();
+        int blockSizeX = input.readInt();
+
+        byte[] packed = new byte[input.readInt()];
+        input.readFully(packed);
+        return Chromosome.unpack(blockNumbersY, blockNumbersX, blockSizeY, blockSizeX, packed, colorPalette);
+    }
+}
@@ -1,6 +1,8 @@
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Chromosome consists of genes.
@@ -19,44 +21,170 @@ public class Chromosome {
     private final int blockSizeY;
     private final int blockSizeX;
     private Double RMSD;
-    private BufferedImage image;
 
-    private final ArrayList<ArrayList<Gene>> genes;
+    // Value of the changes fields when no blocks were changed
+    private static final int NO_BLOCKS = -1;
+    // Value of the changes fields when several blocks were changed
+    private static final int ALL_BLOCKS = -2;
+    // Maximum number of pixels of the strip which is compared with the source image by the tiled evaluation
+    private static final int STRIP_PIXELS = 1 << 16;
+
+    // Buffers for strips of blocks, they belong to the thread
+    private static final ThreadLocal<int[]> strips = ThreadLocal.withInitial(() -> new int[0]);
+    // Readers of paths of drawn genes, they belong to the thread
+    private static final ThreadLocal<Gene.PathCursor> cursors = ThreadLocal.withInitial(Gene.PathCursor::new);
+
+    // The image can be shared with other chromosomes, so it is never modified.
+    // If the chromosome differs from the image by one block,
+    // this block is drawn on the separate tile.
+    private BufferedImage image;
+    private BufferedImage tile;
+    private int tileBlock = NO_BLOCKS;
+    // Index of the only block which was changed after the image was calculated,
+    // or NO_BLOCKS/ALL_BLOCKS
+    private int imageChanges = ALL_BLOCKS;
+
+    // Error of each block against the source image according to the metric.
+    // The array can be shared with other chromosomes, so it is never modified after it is calculated
+    private double[] blockErrors;
+    // Sum of all block errors
+    private double totalError;
+    // Metric of block errors, it is set when errors are calculated
+    private Metric metric;
+    // Index of the only block which was changed after the errors were calculated,
+    // or NO_BLOCKS/ALL_BLOCKS
+    private int errorChanges = ALL_BLOCKS;
+
+    // Genes are immutable, so the array is shared with the copied chromosome and copied on write.
+    // The gene with coordinates (y, x) has index y * blockNumbersX + x.
+    private Gene[] genes;
+
+    // The chromosome which differs from the copied one by one block keeps the gene and the error of this block separately,
+    // so mutated chromosomes don't copy arrays of genes and errors.
+    // The changed block replaces the block of these arrays, or it is NO_BLOCKS.
+    private int changedBlock = NO_BLOCKS;
+    private Gene changedGene;
+    private double changedError;
 
-    Chromosome(int blockNumbersY, int blockNumbersX, int blockSizeY, int blockSizeX) {
+    /**
+     * Create the chromosome with randomly generated genes
+     */
+    Chromosome(int blockNumbersY, int blockNumbersX, int blockSizeY, int blockSizeX, RandomSource random) {
         this.blockNumbersY = blockNumbersY;
         this.blockNumbersX = blockNumbersX;
         this.blockSizeY = blockSizeY;
         this.blockSizeX = blockSizeX;
 
-        genes = new ArrayList<>(blockNumbersY);
-        for (int i = 0; i < blockNumbersY; i++) {
-            ArrayList<Gene> row = new ArrayList<>(blockNumbersX);
-            for (int j = 0; j < blockNumbersX; j++) {
-                row.add(generateGene());
-            }
-            genes.add(row);
+        genes = new Gene[blockNumbersY * blockNumbersX];
+        for (int i = 0; i < genes.length; i++) {
+            genes[i] = new Gene(blockSizeY, blockSizeX, random);
         }
     }
 
+    /**
+     * Create the chromosome with given genes
+     *
+     * @param genes genes row by row, the gene with coordinates (y, x) has index y * blockNumbersX + x
+     */
+    Chromosome(int blockNumbersY, int blockNumbersX, int blockSizeY, int blockSizeX, Gene[] genes) {
+        this.blockNumbersY = blockNumbersY;
+        this.blockNumbersX = blockNumbersX;
+        this.blockSizeY = blockSizeY;
+        this.blockSizeX = blockSizeX;
+        this.genes = genes.clone();
+    }
+
     Chromosome(Chromosome chromosome) {
         this.blockNumbersY = chromosome.getBlockNumbersY();
         this.blockNumbersX = chromosome.getBlockNumbersX();
         this.blockSizeY = chromosome.getBlockSizeY();
         this.blockSizeX = chromosome.getBlockSizeX();
         this.RMSD = chromosome.getRMSD();
-        this.image = chromosome.getImage();
-
-        ArrayList<ArrayList<Gene>> chromosomeBlocks = chromosome.getGenes();
+        this.image = chromosome.image;
+        this.tile = chromosome.tile;
+        this.tileBlock = chromosome.tileBlock;
+        this.imageChanges = chromosome.imageChanges;
+        if (chromosome.errorChanges != ALL_BLOCKS) {
+            this.blockErrors = chromosome.blockErrors;
+            this.totalError = chromosome.totalError;
+            this.metric = chromosome.metric;
+            this.errorChanges = chromosome.errorChanges;
+        }
+        this.genes = chromosome.genes;
+        this.changedBlock = chromosome.changedBlock;
+        this.changedGene = chromosome.changedGene;
+        this.changedError = chromosome.changedError;
+    }
 
-        genes = new ArrayList<>(blockNumbersY);
-        for (int i = 0; i < blockNumbersY; i++) {
-            ArrayList<Gene> row = new ArrayList<>(blockNumbersX);
-            for (int j = 0; j < blockNumbersX; j++) {
-                row.add(new Gene(chromosomeBlocks.get(i).get(j)));
+    /**
+     * Create the chromosome whose genes are taken from the given chromosomes.
+     * Images and errors of blocks are taken from these chromosomes too,
+     * so the created chromosome is not drawn and evaluated again.
+     * If some of the chromosomes are not drawn, the image is drawn later when it is needed.
+     *
+     * @param chromosomes evaluated chromosomes with the same blocks structure
+     * @param sources     index of the chromosome for each block
+     */
+    Chromosome(ArrayList<Chromosome> chromosomes, int[] sources) {
+        Chromosome first = chromosomes.get(0);
+        this.blockNumbersY = first.getBlockNumbersY();
+        this.blockNumbersX = first.getBlockNumbersX();
+        this.blockSizeY = first.getBlockSizeY();
+        this.blockSizeX = first.getBlockSizeX();
+
+        boolean drawn = true;
+        for (int source : sources) {
+            drawn &= chromosomes.get(source).imageChanges == NO_BLOCKS;
+        }
+        metric = first.metric;
+        if (drawn) {
+            BufferedImage drawnImage = chromosomes.get(sources[0]).image;
+            image = new BufferedImage(drawnImage.getWidth(), drawnImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+            imageChanges = NO_BLOCKS;
+        }
+        blockErrors = new double[blockNumbersY * blockNumbersX];
+        errorChanges = NO_BLOCKS;
+        genes = new Gene[blockNumbersY * blockNumbersX];
+
+        int[] pixels = drawn ? Calculation.getPixels(image) : null;
+        for (int i = 0; i < genes.length; i++) {
+            Chromosome source = chromosomes.get(sources[i]);
+            genes[i] = source.getGene(i);
+            blockErrors[i] = source.getBlockError(i);
+            totalError += blockErrors[i];
+            if (drawn) {
+                source.copyBlockPixels(i, pixels);
             }
-            genes.add(row);
         }
+
+        RMSD = metric.getDifference(totalError);
+    }
+
+    /**
+     * The way to color paths of the mutated gene
+     */
+    public enum Coloring {
+        // Siblings color paths randomly
+        RANDOM,
+        // Each path has the average color of the source image under it,
+        // it is the color with the least squared error, so there are no siblings.
+        // Other metrics don't have the least error at this color, so it is used only with RMSD
+        OPTIMAL,
+        // The same as OPTIMAL, but the color is the nearest color of the palette
+        PALETTE
+    }
+
+    /**
+     * Create the population with mutated gene according to the given chromosome,
+     * paths of the gene are colored randomly
+     *
+     * @param chromosome       given chromosome
+     * @param amountOfSiblings number of chromosomes with the same mutated gene, but with different other characteristics
+     * @param random           source of random numbers of the mutation
+     * @return population
+     */
+    public ArrayList<Chromosome> mutate(Chromosome chromosome, int amountOfSiblings, RandomSource random) {
+        return mutate(chromosome, amountOfSiblings, Coloring.RANDOM, null, null, random);
     }
 
     /**
@@ -64,21 +192,45 @@ public class Chromosome {
      *
      * @param chromosome       given chromosome
      * @param amountOfSiblings number of chromosomes with the same mutated gene, but with different other characteristics
+     * @param coloring         the way to color paths of the mutated gene
+     * @param sourceImage      original image, it is needed if paths are not colored randomly
+     * @param sampler          chooser of the mutated block according to errors of blocks,
+     *                         or null to choose it uniformly
+     * @param random           source of random numbers of the mutation
      * @return population
      */
-    public ArrayList<Chromosome> mutate(Chromosome chromosome, int amountOfSiblings) {
+    public ArrayList<Chromosome> mutate(Chromosome chromosome, int amountOfSiblings, Coloring coloring, BufferedImage sourceImage,
+                                        BlockSampler sampler, RandomSource random) {
 
         // Mutate randomly gene
-        int blockY = Calculation.getRandomNumber(0, blockNumbersY);
-        int blockX = Calculation.getRandomNumber(0, blockNumbersX);
-        Gene gene = generateGene();
+        int blockY;
+        int blockX;
+        if (sampler != null) {
+            int block = sampler.nextBlock(random);
+            blockY = block / blockNumbersX;
+            blockX = block % blockNumbersX;
+        } else {
+            blockY = random.nextInt(0, blockNumbersY);
+            blockX = random.nextInt(0, blockNumbersX);
+        }
+        Gene gene = new Gene(blockSizeY, blockSizeX, random);
+
+        if (coloring != Coloring.RANDOM) {
+            // The best colors are known, so the single child is enough
+            Gene coloredGene = colorGene(gene, blockY * blockNumbersX + blockX, blockNumbersY, blockNumbersX,
+                    sourceImage, coloring == Coloring.PALETTE);
+            Chromosome child = new Chromosome(chromosome);
+            child.setBlock(coloredGene, blockY, blockX);
+            ArrayList<Chromosome> children = new ArrayList<>(1);
+            children.add(child);
+            return children;
+        }
 
         // Create siblings with this mutated gene, but different other characteristics
         // generated randomly
         ArrayList<Chromosome> siblings = new ArrayList<>(amountOfSiblings);
         for (int i = 0; i < amountOfSiblings; i++) {
-            Gene newGeneColor = new Gene(gene);
-            newGeneColor.colorMaze();
+            Gene newGeneColor = gene.colorMaze(random);
             Chromosome child = new Chromosome(chromosome);
             child.setBlock(newGeneColor, blockY, blockX);
             siblings.add(child);
@@ -88,26 +240,242 @@ public class Chromosome {
     }
 
     /**
-     * Calculate the 'image' field of this class
+     * Calculate the 'image' field of this class.
+     * <p>
+     * If the chromosome differs from the already drawn one by a single gene,
+     * only the block of this gene is drawn on the tile,
+     * and the image itself is shared with the drawn chromosome.
+     */
+    public void calculateImage(int imageWidth, int imageHeight) {
+        if (imageChanges == NO_BLOCKS) {
+            return;
+        }
+
+        if (imageChanges == ALL_BLOCKS || image == null) {
+            // New image is black, so it is the image background
+            image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            tile = null;
+            tileBlock = NO_BLOCKS;
+
+            // Add genes on the image
+            int[] pixels = Calculation.getPixels(image);
+            for (int y = 0; y < blockNumbersY; y++) {
+                int startY = getBlockStart(y, blockNumbersY, imageHeight);
+                int endY = getBlockStart(y + 1, blockNumbersY, imageHeight);
+                for (int x = 0; x < blockNumbersX; x++) {
+                    int startX = getBlockStart(x, blockNumbersX, imageWidth);
+                    int endX = getBlockStart(x + 1, blockNumbersX, imageWidth);
+                    drawGene(getGene(y * blockNumbersX + x), startY, startX, endY, endX, pixels, 0, 0, imageWidth, imageHeight);
+                }
+            }
+        } else {
+            // The tile can contain only one block, so the previous tile is drawn on the image
+            if (tile != null && tileBlock != imageChanges) {
+                mergeTile();
+            }
+
+            int y = imageChanges / blockNumbersX;
+            int x = imageChanges % blockNumbersX;
+            int startY = getBlockStart(y, blockNumbersY, imageHeight);
+            int startX = getBlockStart(x, blockNumbersX, imageWidth);
+            int endY = getBlockStart(y + 1, blockNumbersY, imageHeight);
+            int endX = getBlockStart(x + 1, blockNumbersX, imageWidth);
+
+            tile = new BufferedImage(endX - startX, endY - startY, BufferedImage.TYPE_INT_RGB);
+            tileBlock = imageChanges;
+            drawGene(getGene(tileBlock), startY, startX, endY, endX, Calculation.getPixels(tile), startY, startX, endX - startX, endY - startY);
+        }
+        imageChanges = NO_BLOCKS;
+    }
+
+    /**
+     * Calculate the 'RMSD' field of this class according to the source image.
+     * It keeps the difference according to the metric, that is RMSD for the default metric.
+     * The 'image' field must be calculated before.
+     * <p>
+     * If the chromosome differs from the already evaluated one by a single gene,
+     * only the block of this gene is compared with the source image.
+     * The errors of other blocks are taken from the evaluated chromosome.
      */
-    public void calculateImage(int imageWidth, int imageHeight, int imageType) {
-        image = new BufferedImage(imageWidth, imageHeight, imageType);
+    public void calculateRMSD(Metric metric) {
+        if (errorChanges == ALL_BLOCKS || this.metric != metric) {
+            double[] errors = new double[blockNumbersY * blockNumbersX];
+            for (int y = 0; y < blockNumbersY; y++) {
+                for (int x = 0; x < blockNumbersX; x++) {
+                    errors[y * blockNumbersX + x] = calculateBlockError(metric, y, x);
+                }
+            }
+            setBlockErrors(errors, metric);
+        } else if (errorChanges != NO_BLOCKS) {
+            setChangedBlockError(calculateBlockError(metric, errorChanges / blockNumbersX, errorChanges % blockNumbersX), metric);
+        }
+    }
 
-        // Set the image background
-        for (int x = 0; x < imageWidth; x++) {
-            for (int y = 0; y < imageHeight; y++) {
-                image.setRGB(x, y, new Color(0, 0, 0).getRGB());
+    /**
+     * Calculate the 'RMSD' field without the image.
+     * Each evaluated block is drawn on the buffer of the thread and compared with the source image,
+     * so the chromosome doesn't keep any pixels, and the image is drawn only when it is needed.
+     * Errors are the same as errors of calculateRMSD.
+     */
+    public void calculateRMSDByTiles(Metric metric) {
+        if (errorChanges == ALL_BLOCKS || this.metric != metric) {
+            double[] errors = new double[blockNumbersY * blockNumbersX];
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] = calculateGeneError(getGene(i), i, blockNumbersY, blockNumbersX, metric);
             }
+            setBlockErrors(errors, metric);
+        } else if (errorChanges != NO_BLOCKS) {
+            setChangedBlockError(calculateGeneError(getGene(errorChanges), errorChanges, blockNumbersY, blockNumbersX, metric), metric);
+        }
+    }
+
+    /**
+     * Get the index of the only block whose error is not calculated after the gene of this block was changed.
+     * The error of such block doesn't depend on other blocks, so it can be calculated separately.
+     *
+     * @return index of the block, or -1 if errors of no blocks or of several blocks are not calculated
+     */
+    public int getChangedBlock() {
+        return errorChanges >= 0 ? errorChanges : -1;
+    }
+
+    /**
+     * Set the error of the changed block which is calculated separately and calculate the 'RMSD' field.
+     * The image of the block is drawn only when it is needed.
+     *
+     * @param error  error of the changed block against the source image
+     * @param metric metric of the error, it must be the metric of other blocks
+     */
+    public void setChangedBlockError(double error, Metric metric) {
+        // The changed block is the last block which was set, so its error is kept separately.
+        // Errors of RMSD are integers, so the difference doesn't lose precision.
+        // Errors of other metrics are rounded a little here, the total is summed from scratch
+        // when errors of all blocks are set or chromosomes are combined by the crossover
+        totalError += error - changedError;
+        changedError = error;
+        errorChanges = NO_BLOCKS;
+        this.metric = metric;
+
+        RMSD = metric.getDifference(totalError);
+    }
+
+    /**
+     * Calculate the error of the gene placed at the particular block against the source image.
+     * The gene is drawn on the buffer of the thread, so other genes are not needed.
+     * If the metric is separable, the block is drawn and compared by horizontal strips,
+     * so the buffer doesn't grow with the image size.
+     *
+     * @param gene          gene of the block
+     * @param block         index of the block y * blockNumbersX + x
+     * @param blockNumbersY number of blocks along the y coordinate
+     * @param blockNumbersX number of blocks along the x coordinate
+     * @param metric        metric with the original image
+     */
+    public static double calculateGeneError(Gene gene, int block, int blockNumbersY, int blockNumbersX, Metric metric) {
+        BufferedImage sourceImage = metric.getSourceImage();
+        int imageWidth = sourceImage.getWidth();
+        int imageHeight = sourceImage.getHeight();
+        int y = block / blockNumbersX;
+        int x = block % blockNumbersX;
+        int startY = getBlockStart(y, blockNumbersY, imageHeight);
+        int startX = getBlockStart(x, blockNumbersX, imageWidth);
+        int width = getBlockStart(x + 1, blockNumbersX, imageWidth) - startX;
+        int height = getBlockStart(y + 1, blockNumbersY, imageHeight) - startY;
+
+        int stripHeight = metric.isSeparable() ? Math.max(Math.min(STRIP_PIXELS / Math.max(width, 1), height), 1) : height;
+        int[] stripPixels = strips.get();
+        if (stripPixels.length < width * stripHeight) {
+            stripPixels = new int[width * stripHeight];
+            strips.set(stripPixels);
         }
 
-        // Add genes on the image
-        ArrayList<Pixel> pixels = getPixels(imageWidth, imageHeight);
-        for (Pixel pixel : pixels) {
-            image.setRGB(pixel.x, pixel.y, pixel.color.getRGB());
+        double error = 0;
+        for (int row = 0; row < height; row += stripHeight) {
+            int rows = Math.min(stripHeight, height - row);
+            // Pixels which are not covered by paths are black
+            Arrays.fill(stripPixels, 0, width * rows, 0);
+            drawGene(gene, startY, startX, startY + height, startX + width, stripPixels, startY + row, startX, width, rows);
+            error += metric.calculateError(stripPixels, 0, width, startY + row, startX, width, rows);
         }
+        return error;
     }
 
+    /**
+     * Color each path of the gene by the color with the least squared error against the source image,
+     * that is the average color of source pixels under the path.
+     * Paths of the gene don't overlap, so their colors don't depend on each other.
+     *
+     * @param gene          gene placed at the particular block
+     * @param block         index of the block y * blockNumbersX + x
+     * @param blockNumbersY number of blocks along the y coordinate
+     * @param blockNumbersX number of blocks along the x coordinate
+     * @param sourceImage   original image
+     * @param snapToPalette whether to take the nearest color of the palette instead of the average color
+     * @return gene with the same paths, but with new colors
+     */
+    public static Gene colorGene(Gene gene, int block, int blockNumbersY, int blockNumbersX, BufferedImage sourceImage, boolean snapToPalette) {
+        int imageWidth = sourceImage.getWidth();
+        int imageHeight = sourceImage.getHeight();
+        int y = block / blockNumbersX;
+        int x = block % blockNumbersX;
+        int startY = getBlockStart(y, blockNumbersY, imageHeight);
+        int startX = getBlockStart(x, blockNumbersX, imageWidth);
+        int width = getBlockStart(x + 1, blockNumbersX, imageWidth) - startX;
+        int height = getBlockStart(y + 1, blockNumbersY, imageHeight) - startY;
+        List<Path> paths = gene.getPaths();
+        int pathsNumber = paths.size();
+
+        // Draw the number of the path instead of its color to find pixels under it
+        int[] numbers = new int[pathsNumber];
+        for (int i = 0; i < pathsNumber; i++) {
+            numbers[i] = i + 1;
+        }
+        int[] pathPixels = new int[width * height];
+        drawGene(gene, numbers, startY, startX, startY + height, startX + width, pathPixels, startY, startX, width, height);
+
+        // Sums of red, green, blue components and the number of pixels of each path
+        long[] sums = new long[pathsNumber * 4];
+        int[] sourcePixels = Calculation.getPixels(sourceImage);
+        for (int row = 0; row < height; row++) {
+            int sourceIndex = (startY + row) * imageWidth + startX;
+            for (int column = 0; column < width; column++) {
+                int path = pathPixels[row * width + column] - 1;
+                if (path >= 0) {
+                    int color = sourcePixels[sourceIndex + column];
+                    sums[path * 4] += (color >> 16) & 0xFF;
+                    sums[path * 4 + 1] += (color >> 8) & 0xFF;
+                    sums[path * 4 + 2] += color & 0xFF;
+                    sums[path * 4 + 3]++;
+                }
+            }
+        }
+
+        int[] colors = new int[pathsNumber];
+        for (int i = 0; i < pathsNumber; i++) {
+            long count = sums[i * 4 + 3];
+            if (count == 0) {
+                // The path is outside the image
+                colors[i] = paths.get(i).getColor();
+                continue;
+            }
+            colors[i] = (int) ((sums[i * 4] + count / 2) / count) << 16
+                    | (int) ((sums[i * 4 + 1] + count / 2) / count) << 8
+                    | (int) ((sums[i * 4 + 2] + count / 2) / count);
+            if (snapToPalette) {
+                colors[i] = Calculation.getNearestColor(colors[i]);
+            }
+        }
+        return gene.withColors(colors);
+    }
+
+    /**
+     * Get the image of the chromosome.
+     * If the chromosome has the tile, it is drawn on the copy of the image.
+     */
     public BufferedImage getImage() {
+        if (tile != null) {
+            mergeTile();
+        }
         return image;
     }
 
@@ -119,16 +487,72 @@ public class Chromosome {
         return RMSD;
     }
 
+    /**
+     * Get squared errors of blocks against the source image.
+     * The block with coordinates (y, x) has index y * blockNumbersX + x.
+     * The array must not be modified.
+     */
+    public double[] getBlockErrors() {
+        if (blockErrors == null || changedBlock == NO_BLOCKS) {
+            return blockErrors;
+        }
+        double[] errors = blockErrors.clone();
+        errors[changedBlock] = changedError;
+        return errors;
+    }
+
     public void setBlock(Gene gene, int y, int x) {
-        genes.get(y).set(x, gene);
+        int index = y * blockNumbersX + x;
+        if (changedBlock != NO_BLOCKS && changedBlock != index) {
+            applyChangedBlock();
+        }
+        if (changedBlock == NO_BLOCKS && blockErrors != null) {
+            changedError = blockErrors[index];
+        }
+        changedBlock = index;
+        changedGene = gene;
+
+        // Keep track of the changed block to update only its image and error.
+        // If several blocks are changed, they are calculated from scratch.
+        imageChanges = addChange(imageChanges, index);
+        errorChanges = addChange(errorChanges, index);
     }
 
     public Gene getGene(int y, int x) {
-        return new Gene(genes.get(y).get(x));
+        return getGene(y * blockNumbersX + x);
+    }
+
+    /**
+     * Pack genes into one array: the length of the code of each gene as the variable-length number and the code.
+     * Codes of large blocks are longer than 65535 bytes, so the length has no fixed size.
+     *
+     * @param palette palette which colors of genes are indexed in
+     */
+    public byte[] pack(int[] palette) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int i = 0; i < blockNumbersY * blockNumbersX; i++) {
+            byte[] code = getGene(i).getCode(palette);
+            Gene.writeNumber(output, code.length);
+            output.write(code, 0, code.length);
+        }
+        return output.toByteArray();
     }
 
-    public ArrayList<ArrayList<Gene>> getGenes() {
-        return genes;
+    /**
+     * Create the chromosome from genes packed by the 'pack' method
+     *
+     * @param packed  packed genes
+     * @param palette palette which was given to the 'pack' method
+     */
+    static Chromosome unpack(int blockNumbersY, int blockNumbersX, int blockSizeY, int blockSizeX, byte[] packed, int[] palette) {
+        Gene[] genes = new Gene[blockNumbersY * blockNumbersX];
+        int[] position = new int[1];
+        for (int i = 0; i < genes.length; i++) {
+            int length = Gene.readNumber(packed, position);
+            genes[i] = Gene.fromCode(blockSizeY, blockSizeX, Arrays.copyOfRange(packed, position[0], position[0] + length), palette);
+            position[0] += length;
+        }
+        return new Chromosome(blockNumbersY, blockNumbersX, blockSizeY, blockSizeX, genes);
     }
 
     public int getBlockNumbersY() {
@@ -147,84 +571,242 @@ public class Chromosome {
         return blockSizeX;
     }
 
+    private Gene getGene(int index) {
+        return index == changedBlock ? changedGene : genes[index];
+    }
+
+    private double getBlockError(int index) {
+        return index == changedBlock ? changedError : blockErrors[index];
+    }
+
+    /**
+     * Set errors of all blocks, the array must not be modified after that
+     */
+    private void setBlockErrors(double[] errors, Metric metric) {
+        blockErrors = errors;
+        totalError = 0;
+        for (double error : errors) {
+            totalError += error;
+        }
+        if (changedBlock != NO_BLOCKS) {
+            changedError = errors[changedBlock];
+        }
+        errorChanges = NO_BLOCKS;
+        this.metric = metric;
+
+        RMSD = metric.getDifference(totalError);
+    }
+
+    /**
+     * Copy arrays of genes and errors with the changed block,
+     * so another block can be changed
+     */
+    private void applyChangedBlock() {
+        genes = genes.clone();
+        genes[changedBlock] = changedGene;
+        if (blockErrors != null) {
+            blockErrors = blockErrors.clone();
+            blockErrors[changedBlock] = changedError;
+        }
+        changedBlock = NO_BLOCKS;
+        changedGene = null;
+    }
+
+    private static int addChange(int changes, int index) {
+        if (changes == NO_BLOCKS || changes == index) {
+            return index;
+        }
+        return ALL_BLOCKS;
+    }
+
     /**
-     * Create randomly the gene
+     * Get the first pixel coordinate of the block.
+     * The image is divided into equal blocks, the last row and column of blocks
+     * also take the remaining pixels, so the blocks cover the whole image.
      *
-     * @return generated gene
+     * @param block        block coordinate, or the number of blocks to get the image size
+     * @param blockNumbers number of blocks along the coordinate
+     * @param imageSize    image size along the coordinate
      */
-    private Gene generateGene() {
-        Gene gene = new Gene(blockSizeY, blockSizeX);
-        gene.fillMaze();
-        gene.colorMaze();
-        return gene;
+    static int getBlockStart(int block, int blockNumbers, int imageSize) {
+        if (block == blockNumbers) {
+            return imageSize;
+        }
+        return (imageSize / blockNumbers) * block;
     }
 
     /**
-     * Interpret the maze of genes in terms of pixels.
-     * It scales the paths to image sizes.
+     * Draw the tile on the copy of the image
      */
-    private ArrayList<Pixel> getPixels(int imageWidth, int imageHeight) {
-        ArrayList<Pixel> pixels = new ArrayList<>(imageWidth * imageHeight);
+    private void mergeTile() {
+        int y = tileBlock / blockNumbersX;
+        int x = tileBlock % blockNumbersX;
+        int imageWidth = image.getWidth();
+        int startY = getBlockStart(y, blockNumbersY, image.getHeight());
+        int startX = getBlockStart(x, blockNumbersX, imageWidth);
+        int tileWidth = tile.getWidth();
+
+        BufferedImage newImage = new BufferedImage(imageWidth, image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] newPixels = Calculation.getPixels(newImage);
+        int[] tilePixels = Calculation.getPixels(tile);
+        System.arraycopy(Calculation.getPixels(image), 0, newPixels, 0, newPixels.length);
+        for (int row = 0; row < tile.getHeight(); row++) {
+            System.arraycopy(tilePixels, row * tileWidth, newPixels, (startY + row) * imageWidth + startX, tileWidth);
+        }
 
-        //int offsetY = (imageHeight / (blockNumbersY * blockSizeY)) / 2;
-        //int offsetX = (imageWidth / (blockNumbersX * blockSizeX)) / 2;
-        int offsetY = 4;
-        int offsetX = 4;
+        image = newImage;
+        tile = null;
+        tileBlock = NO_BLOCKS;
+    }
 
-        ArrayList<Path> paths = getPaths();
-        for (Path path : paths) {
-            Color pathColor = path.getColor();
-            for (int j = 0; j < path.size() - 1; j++) {
-                Cell current = path.get(j);
-                Cell next = path.get(j + 1);
-                int yStart = Math.min(current.y * offsetY + 1, next.y * offsetY + 2);
-                int xStart = Math.min(current.x * offsetX + 1, next.x * offsetX + 2);
-                int xStop = Math.max(current.x * offsetX + 1, next.x * offsetX + 2);
-                int yStop = Math.max(current.y * offsetY + 1, next.y * offsetY + 2);
-
-                for (int k = yStart; k <= yStop; k++) {
-                    for (int l = xStart; l <= xStop; l++) {
-                        pixels.add(new Pixel(k, l, pathColor));
-                    }
-                }
+    /**
+     * Copy pixels of the block from the image or the tile to the image of the same size
+     */
+    private void copyBlockPixels(int block, int[] target) {
+        int y = block / blockNumbersX;
+        int x = block % blockNumbersX;
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        int startY = getBlockStart(y, blockNumbersY, imageHeight);
+        int startX = getBlockStart(x, blockNumbersX, imageWidth);
+        int width = getBlockStart(x + 1, blockNumbersX, imageWidth) - startX;
+        int height = getBlockStart(y + 1, blockNumbersY, imageHeight) - startY;
+
+        for (int row = 0; row < height; row++) {
+            int targetIndex = (startY + row) * imageWidth + startX;
+            if (tile != null && tileBlock == block) {
+                System.arraycopy(Calculation.getPixels(tile), row * width, target, targetIndex, width);
+            } else {
+                System.arraycopy(Calculation.getPixels(image), targetIndex, target, targetIndex, width);
             }
+        }
+    }
 
-            Cell lastCell = path.get(path.size() - 1);
-            int yStart = lastCell.y * offsetY + 1;
-            int xStart = lastCell.x * offsetX + 1;
-            int yStop = yStart + 1;
-            int xStop = xStart + 1;
-            for (int k = yStart; k <= yStop; k++) {
-                for (int l = xStart; l <= xStop; l++) {
-                    pixels.add(new Pixel(k, l, pathColor));
-                }
-            }
+    /**
+     * Calculate the error of the particular block against the source image
+     */
+    private double calculateBlockError(Metric metric, int y, int x) {
+        int imageWidth = metric.getSourceImage().getWidth();
+        int imageHeight = metric.getSourceImage().getHeight();
+
+        int startY = getBlockStart(y, blockNumbersY, imageHeight);
+        int startX = getBlockStart(x, blockNumbersX, imageWidth);
+        int endY = getBlockStart(y + 1, blockNumbersY, imageHeight);
+        int endX = getBlockStart(x + 1, blockNumbersX, imageWidth);
+
+        if (tile != null && tileBlock == y * blockNumbersX + x) {
+            return metric.calculateError(Calculation.getPixels(tile), 0, tile.getWidth(), startY, startX, endX - startX, endY - startY);
         }
+        return metric.calculateError(Calculation.getPixels(image), startY * imageWidth + startX, imageWidth,
+                startY, startX, endX - startX, endY - startY);
+    }
 
-        return pixels;
+    /**
+     * Draw the gene on the pixels of the image or its part.
+     * It scales the paths of the gene to the size of its block.
+     * Pixels outside the given part are skipped.
+     *
+     * @param gene    gene to draw
+     * @param startY  y coordinate of the block of the gene on the image
+     * @param startX  x coordinate of the block of the gene on the image
+     * @param endY    y coordinate after the block of the gene
+     * @param endX    x coordinate after the block of the gene
+     * @param pixels  packed RGB pixels of the image part
+     * @param originY y coordinate of the part on the image
+     * @param originX x coordinate of the part on the image
+     * @param width   width of the part
+     * @param height  height of the part
+     */
+    private static void drawGene(Gene gene, int startY, int startX, int endY, int endX, int[] pixels, int originY, int originX, int width, int height) {
+        drawGene(gene, null, startY, startX, endY, endX, pixels, originY, originX, width, height);
     }
 
     /**
-     * Get genes patterns
+     * Draw the gene whose paths have the given colors instead of their own ones
+     *
+     * @param colors packed RGB color of each path, or null to draw paths by their colors
      */
-    private ArrayList<Path> getPaths() {
-        ArrayList<Path> paths = new ArrayList<>();
-        for (int y = 0; y < blockNumbersY; y++) {
-            for (int x = 0; x < blockNumbersX; x++) {
-                ArrayList<Path> blockPaths = genes.get(y).get(x).getPaths();
-                for (Path blockPath : blockPaths) {
-                    Path newPath = new Path(blockPath.getColor());
-                    for (int j = 0; j < blockPath.size(); j++) {
-                        Cell cell = blockPath.get(j);
-                        int newY = y * blockSizeY + cell.y;
-                        int newX = x * blockSizeX + cell.x;
-                        newPath.add(new Cell(newY, newX));
-                    }
-                    paths.add(newPath);
-                }
+    private static void drawGene(Gene gene, int[] colors, int startY, int startX, int endY, int endX, int[] pixels,
+                                 int originY, int originX, int width, int height) {
+        int blockSizeY = gene.getBlockSizeY();
+        int blockSizeX = gene.getBlockSizeX();
+
+        // Paths are read from the code of the gene without creating objects for them
+        Gene.PathCursor path = cursors.get();
+        path.start(gene);
+        while (path.next()) {
+            int pathColor = colors != null ? colors[path.getIndex()] : path.getColor();
+            for (int j = 0; j < path.size() - 1; j++) {
+                // The connection covers squares of both cells and the space between them
+                int currentY = path.getY(j);
+                int currentX = path.getX(j);
+                int nextY = path.getY(j + 1);
+                int nextX = path.getX(j + 1);
+                int yStart = Math.min(getSquareStart(currentY, blockSizeY, startY, endY), getSquareStart(nextY, blockSizeY, startY, endY));
+                int xStart = Math.min(getSquareStart(currentX, blockSizeX, startX, endX), getSquareStart(nextX, blockSizeX, startX, endX));
+                int yStop = Math.max(getSquareEnd(currentY, blockSizeY, startY, endY), getSquareEnd(nextY, blockSizeY, startY, endY));
+                int xStop = Math.max(getSquareEnd(currentX, blockSizeX, startX, endX), getSquareEnd(nextX, blockSizeX, startX, endX));
+                fillRectangle(pixels, originY, originX, width, height, yStart, xStart, yStop, xStop, pathColor);
             }
+
+            int last = path.size() - 1;
+            int yStart = getSquareStart(path.getY(last), blockSizeY, startY, endY);
+            int xStart = getSquareStart(path.getX(last), blockSizeX, startX, endX);
+            int yStop = getSquareEnd(path.getY(last), blockSizeY, startY, endY);
+            int xStop = getSquareEnd(path.getX(last), blockSizeX, startX, endX);
+            fillRectangle(pixels, originY, originX, width, height, yStart, xStart, yStop, xStop, pathColor);
         }
+    }
+
+    /**
+     * Get the first pixel coordinate of the cell of the maze.
+     * Cells divide their block equally, so the maze is scaled to any image size
+     * and genes never draw outside their blocks.
+     *
+     * @param cell       cell coordinate inside the block, or the block size to get the end of the block
+     * @param blockSize  number of cells of the block along the coordinate
+     * @param blockStart first pixel coordinate of the block
+     * @param blockEnd   pixel coordinate after the block
+     */
+    static int getCellStart(int cell, int blockSize, int blockStart, int blockEnd) {
+        return blockStart + (int) ((long) (blockEnd - blockStart) * cell / blockSize);
+    }
+
+    /**
+     * Get the first pixel coordinate of the square which the path draws in the cell.
+     * The quarter of the cell on each side is left for connections with neighbour cells,
+     * so 4 pixels of the cell give the square of 2 pixels.
+     */
+    static int getSquareStart(int cell, int blockSize, int blockStart, int blockEnd) {
+        int cellStart = getCellStart(cell, blockSize, blockStart, blockEnd);
+        int cellEnd = getCellStart(cell + 1, blockSize, blockStart, blockEnd);
+        return cellStart + (cellEnd - cellStart) / 4;
+    }
+
+    /**
+     * Get the last pixel coordinate (inclusive) of the square which the path draws in the cell
+     */
+    static int getSquareEnd(int cell, int blockSize, int blockStart, int blockEnd) {
+        int cellStart = getCellStart(cell, blockSize, blockStart, blockEnd);
+        int cellEnd = getCellStart(cell + 1, blockSize, blockStart, blockEnd);
+        return cellEnd - 1 - (cellEnd - cellStart) / 4;
+    }
 
-        return paths;
+    /**
+     * Fill the rectangle with inclusive image coordinates
+     * on the pixels of the image part
+     */
+    private static void fillRectangle(int[] pixels, int originY, int originX, int width, int height,
+                                      int yStart, int xStart, int yStop, int xStop, int color) {
+        int fromY = Math.max(yStart - originY, 0);
+        int fromX = Math.max(xStart - originX, 0);
+        int toY = Math.min(yStop - originY, height - 1);
+        int toX = Math.min(xStop - originX, width - 1);
+        for (int k = fromY; k <= toY; k++) {
+            int row = k * width;
+            for (int l = fromX; l <= toX; l++) {
+                pixels[row + l] = color;
+            }
+        }
     }
 }
@@ -0,0 +1,109 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Color difference Delta E (CIE76), the distance between colors in the CIELAB color space.
+ * Equal distances in this space are close to equal differences which people see.
+ * <p>
+ * Colors of the source image are converted once.
+ * Paths of the image consist of long runs of the same color,
+ * so the color of the image is converted only when it differs from the previous pixel.
+ * The difference of the whole image is the average Delta E of its pixels.
+ */
+public class DeltaEMetric implements Metric {
+    // Linear intensity of each sRGB component value
+    private static final double[] LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < LINEAR.length; i++) {
+            double value = i / 255.0;
+            LINEAR[i] = value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private final BufferedImage sourceImage;
+    // L, a and b components of each source pixel
+    private final float[] sourceColors;
+
+    DeltaEMetric(BufferedImage sourceImage) {
+        this.sourceImage = sourceImage;
+        int[] pixels = Calculation.getPixels(sourceImage);
+        sourceColors = new float[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            toLab(pixels[i], sourceColors, i * 3);
+        }
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.DELTA_E;
+    }
+
+    @Override
+    public BufferedImage getSourceImage() {
+        return sourceImage;
+    }
+
+    @Override
+    public boolean isSeparable() {
+        return true;
+    }
+
+    @Override
+    public double calculateError(int[] pixels, int offset, int width, int startY, int startX, int areaWidth, int areaHeight) {
+        int imageWidth = sourceImage.getWidth();
+        float[] color = new float[3];
+        int lastColor = -1;
+
+        double error = 0;
+        for (int y = 0; y < areaHeight; y++) {
+            int index = offset + y * width;
+            int sourceIndex = ((startY + y) * imageWidth + startX) * 3;
+            for (int x = 0; x < areaWidth; x++) {
+                int pixel = pixels[index + x] & 0xFFFFFF;
+                if (pixel != lastColor) {
+                    toLab(pixel, color, 0);
+                    lastColor = pixel;
+                }
+                double lightnessDiff = color[0] - sourceColors[sourceIndex];
+                double aDiff = color[1] - sourceColors[sourceIndex + 1];
+                double bDiff = color[2] - sourceColors[sourceIndex + 2];
+                error += Math.sqrt(lightnessDiff * lightnessDiff + aDiff * aDiff + bDiff * bDiff);
+                sourceIndex += 3;
+            }
+        }
+        return error;
+    }
+
+    @Override
+    public double getDifference(double error) {
+        return error / (sourceImage.getWidth() * sourceImage.getHeight());
+    }
+
+    /**
+     * Convert the packed RGB color (sRGB, D65 white point) to L, a and b components
+     *
+     * @param color  packed RGB color
+     * @param target array for components
+     * @param index  index of the L component in the array
+     */
+    private static void toLab(int color, float[] target, int index) {
+        double red = LINEAR[(color >> 16) & 0xFF];
+        double green = LINEAR[(color >> 8) & 0xFF];
+        double blue = LINEAR[color & 0xFF];
+
+        double x = (0.4124 * red + 0.3576 * green + 0.1805 * blue) / 0.95047;
+        double y = 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+        double z = (0.0193 * red + 0.1192 * green + 0.9505 * blue) / 1.08883;
+
+        double fx = labFunction(x);
+        double fy = labFunction(y);
+        double fz = labFunction(z);
+        target[index] = (float) (116 * fy - 16);
+        target[index + 1] = (float) (500 * (fx - fy));
+        target[index + 2] = (float) (200 * (fy - fz));
+    }
+
+    private static double labFunction(double t) {
+        return t > 0.008856 ? Math.cbrt(t) : 7.787 * t + 16.0 / 116;
+    }
+}
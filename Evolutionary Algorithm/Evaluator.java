@@ -0,0 +1,27 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * Calculates RMSD values (differences according to the metric) of chromosomes of the population
+ */
+public interface Evaluator {
+
+    /**
+     * Calculate RMSD values and errors of blocks of chromosomes.
+     * Images of chromosomes may be not calculated,
+     * they are calculated by Chromosome.calculateImage when they are needed.
+     *
+     * @param chromosomes chromosomes of the population
+     * @param sourceImage original image
+     * @param statistics  statistics where the time of rendering and fitness is added
+     */
+    void evaluate(ArrayList<Chromosome> chromosomes, BufferedImage sourceImage, GenerationStatistics statistics);
+
+    /**
+     * Whether chromosomes are evaluated without their images to keep the memory bounded,
+     * so they are not drawn before the crossover either
+     */
+    default boolean isTiled() {
+        return false;
+    }
+}
@@ -1,6 +1,8 @@
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.PriorityQueue;
 
 public class Evolution {
 
@@ -15,16 +17,78 @@ public class Evolution {
      * @param amountOfSiblings        the number of chromosomes with common mutated gene,
      *                                but which is different in terms of other parameters
      * @param amountOfBestDescendants the number of best chromosomes for the selection
+     * @param coloring                the way to color paths of mutated genes
+     * @param sampler                 chooser of mutated blocks of the lineage, it is updated by errors of the given chromosome,
+     *                                or null to choose blocks uniformly
+     * @param random                  source of random numbers of the lineage,
+     *                                each mutation gets its own generator split from it
      * @param sourceImage             original image
+     * @param evaluator               evaluator of the population
+     * @param surrogate               approximate fitness which chooses the part of the population for the evaluator,
+     *                                or null to evaluate the whole population
+     * @param selectionBatchSize      the number of chromosomes which are evaluated at once
+     *                                before the selection keeps only the best of them,
+     *                                or 0 to evaluate the whole population at once
+     * @param statistics              statistics of the generation where the time of phases is added
      * @return best chromosome
      */
-    public static Chromosome nextGeneration(Chromosome chromosome, int amountOfPopulations, int amountOfSiblings, int amountOfBestDescendants, BufferedImage sourceImage) {
-        // Generate new generation
-        ArrayList<Chromosome> population = generatePopulation(chromosome, amountOfPopulations, amountOfSiblings);
-        // Selection
-        ArrayList<Chromosome> descendants = selection(population, sourceImage, amountOfBestDescendants);
+    public static Chromosome nextGeneration(Chromosome chromosome, int amountOfPopulations, int amountOfSiblings, int amountOfBestDescendants,
+                                            Chromosome.Coloring coloring, BlockSampler sampler, RandomSource random, BufferedImage sourceImage,
+                                            Evaluator evaluator, Surrogate surrogate, int selectionBatchSize, GenerationStatistics statistics) {
+        // Errors of blocks are known only after the first generation
+        if (sampler != null) {
+            sampler.update(chromosome.getBlockErrors());
+        }
+
+        ArrayList<Chromosome> descendants = selectDescendants(chromosome, amountOfPopulations, amountOfSiblings, amountOfBestDescendants,
+                coloring, sampler, random, sourceImage, evaluator, surrogate, selectionBatchSize, statistics);
+
+        // The evaluator can skip images, but the crossover composes images of descendants.
+        // The tiled evaluator keeps the memory bounded, so the result is drawn only for the output
+        long startTime = System.nanoTime();
+        if (!evaluator.isTiled()) {
+            for (Chromosome descendant : descendants) {
+                descendant.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+            }
+        }
+        statistics.addTime(GenerationStatistics.Phase.RENDERING, startTime);
+
         // Crossover
-        return crossover(descendants, sourceImage);
+        startTime = System.nanoTime();
+        Chromosome bestChromosome = crossover(descendants);
+        statistics.addTime(GenerationStatistics.Phase.CROSSOVER, startTime);
+        return bestChromosome;
+    }
+
+    /**
+     * Generate the population and choose its best descendants, parameters are the same as parameters of nextGeneration.
+     * The streaming selection and the selection of the whole population choose the same descendants in the same order.
+     *
+     * @return best descendants from the best one
+     */
+    static ArrayList<Chromosome> selectDescendants(Chromosome chromosome, int amountOfPopulations, int amountOfSiblings, int amountOfBestDescendants,
+                                                   Chromosome.Coloring coloring, BlockSampler sampler, RandomSource random, BufferedImage sourceImage,
+                                                   Evaluator evaluator, Surrogate surrogate, int selectionBatchSize, GenerationStatistics statistics) {
+        // Estimations of the surrogate and RMSD values of evaluated chromosomes
+        SurrogateRanking ranking = surrogate != null ? new SurrogateRanking(surrogate.getSamplePeriod()) : null;
+
+        ArrayList<Chromosome> descendants;
+        if (selectionBatchSize > 0) {
+            // Generate new generation by parts and select from them
+            descendants = streamingSelection(chromosome, amountOfPopulations, amountOfSiblings, amountOfBestDescendants, coloring, sampler, random,
+                    sourceImage, evaluator, surrogate, ranking, selectionBatchSize, statistics);
+        } else {
+            // Generate new generation
+            long startTime = System.nanoTime();
+            ArrayList<Chromosome> population = generatePopulation(chromosome, amountOfPopulations, amountOfSiblings, coloring, sampler, random, sourceImage);
+            statistics.addTime(GenerationStatistics.Phase.POPULATION, startTime);
+            // Selection
+            descendants = selection(chromosome, population, sourceImage, amountOfBestDescendants, evaluator, surrogate, ranking, statistics);
+        }
+        if (ranking != null) {
+            statistics.setSurrogateAgreement(ranking.getAgreement());
+        }
+        return descendants;
     }
 
     /**
@@ -33,14 +97,18 @@ public class Evolution {
      * @param chromosome given chromosome
      * @param amount     number of chromosomes with different mutated genes
      * @param siblings   number of chromosomes with the same mutated gene, but with different other characteristics
+     * @param coloring   the way to color paths of mutated genes
+     * @param sampler    chooser of mutated blocks, or null
+     * @param random     source of generators of mutations
      * @return list of population
      */
-    private static ArrayList<Chromosome> generatePopulation(Chromosome chromosome, int amount, int siblings) {
+    private static ArrayList<Chromosome> generatePopulation(Chromosome chromosome, int amount, int siblings, Chromosome.Coloring coloring,
+                                                            BlockSampler sampler, RandomSource random, BufferedImage sourceImage) {
         ArrayList<Chromosome> population = new ArrayList<>(amount * siblings + 1);
         population.add(new Chromosome(chromosome));
 
         for (int i = 0; i < amount; i++) {
-            ArrayList<Chromosome> childrenSiblings = chromosome.mutate(chromosome, siblings);
+            ArrayList<Chromosome> childrenSiblings = chromosome.mutate(chromosome, siblings, coloring, sourceImage, sampler, random.split());
             population.addAll(childrenSiblings);
         }
         return population;
@@ -49,114 +117,303 @@ public class Evolution {
     /**
      * Choose the best descendants of the population
      *
+     * @param chromosome        parent of the population
      * @param amountDescendants number of best chromosomes of the given population
+     * @param evaluator         evaluator of the population
+     * @param surrogate         approximate fitness, or null
+     * @param ranking           ranking where the surrogate's estimations are added, or null
+     * @param statistics        statistics where the time of phases is added
      * @return list of best descendants
      */
-    private static ArrayList<Chromosome> selection(ArrayList<Chromosome> population, BufferedImage sourceImage, int amountDescendants) {
+    private static ArrayList<Chromosome> selection(Chromosome chromosome, ArrayList<Chromosome> population, BufferedImage sourceImage,
+                                                   int amountDescendants, Evaluator evaluator, Surrogate surrogate, SurrogateRanking ranking,
+                                                   GenerationStatistics statistics) {
 
-        // Calculate the Root Mean Square Deviation value for each chromosome
-        for (Chromosome chromosome : population) {
-            chromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight(), sourceImage.getType());
-            BufferedImage image = chromosome.getImage();
-            double RMSD = Calculation.calculateRootMeanSquareDeviation(sourceImage, image);
-            chromosome.setRMSD(RMSD);
-        }
+        // Calculate the Root Mean Square Deviation value for each chromosome.
+        // Mutated chromosomes compare only the block of the mutated gene.
+        population = evaluate(chromosome, population, sourceImage, evaluator, surrogate, ranking, statistics);
 
-        // Sort chromosomes by RMSD value
+        long startTime = System.nanoTime();
+        // Sort chromosomes by RMSD value.
+        // The sort is stable and the population order doesn't depend on threads,
+        // so chromosomes with equal RMSD are always selected in the same order.
         Comparator<Chromosome> compareByRMSD = Comparator.comparing(Chromosome::getRMSD);
         population.sort(compareByRMSD);
 
         // Select best chromosomes according to the RMSD value
         ArrayList<Chromosome> bestDescendants = new ArrayList<>(amountDescendants);
-        for (int i = 0; i < amountDescendants; i++) {
+        for (int i = 0; i < Math.min(amountDescendants, population.size()); i++) {
             bestDescendants.add(population.get(i));
         }
+        statistics.addTime(GenerationStatistics.Phase.SELECTION, startTime);
 
         return bestDescendants;
     }
 
+    /**
+     * Choose the best descendants of the population without keeping the whole population.
+     * Chromosomes are generated and evaluated by batches,
+     * and only the best of them are kept in the bounded heap.
+     * Other chromosomes and their images are released with the batch.
+     * <p>
+     * Chromosomes are compared by the RMSD value and then by the order of generation,
+     * so the result is the same as the result of the usual selection.
+     *
+     * @param chromosome        given chromosome
+     * @param amount            number of chromosomes with different mutated genes
+     * @param siblings          number of chromosomes with the same mutated gene, but with different other characteristics
+     * @param amountDescendants number of best chromosomes of the population
+     * @param coloring          the way to color paths of mutated genes
+     * @param sampler           chooser of mutated blocks, or null
+     * @param random            source of generators of mutations
+     * @param evaluator         evaluator of the population
+     * @param surrogate         approximate fitness, or null
+     * @param ranking           ranking where the surrogate's estimations are added, or null
+     * @param batchSize         number of chromosomes which are evaluated at once
+     * @param statistics        statistics where the time of phases is added
+     * @return list of best descendants
+     */
+    private static ArrayList<Chromosome> streamingSelection(Chromosome chromosome, int amount, int siblings, int amountDescendants,
+                                                            Chromosome.Coloring coloring, BlockSampler sampler, RandomSource random,
+                                                            BufferedImage sourceImage, Evaluator evaluator, Surrogate surrogate, SurrogateRanking ranking, int batchSize,
+                                                            GenerationStatistics statistics) {
+        // The worst of the best descendants is on the top of the heap
+        Comparator<Candidate> compareByRMSD = Comparator.comparing((Candidate candidate) -> candidate.chromosome.getRMSD())
+                .thenComparingLong(candidate -> candidate.index);
+        PriorityQueue<Candidate> bestDescendants = new PriorityQueue<>(amountDescendants + 1, compareByRMSD.reversed());
+        long index = 0;
+
+        ArrayList<Chromosome> batch = new ArrayList<>(batchSize + siblings);
+        batch.add(new Chromosome(chromosome));
+        for (int i = 0; i < amount; i++) {
+            long startTime = System.nanoTime();
+            batch.addAll(chromosome.mutate(chromosome, siblings, coloring, sourceImage, sampler, random.split()));
+            statistics.addTime(GenerationStatistics.Phase.POPULATION, startTime);
+
+            if (batch.size() >= batchSize || i == amount - 1) {
+                ArrayList<Chromosome> evaluated = evaluate(chromosome, batch, sourceImage, evaluator, surrogate, ranking, statistics);
+                startTime = System.nanoTime();
+                for (Chromosome candidate : evaluated) {
+                    bestDescendants.add(new Candidate(candidate, index++));
+                    if (bestDescendants.size() > amountDescendants) {
+                        bestDescendants.poll();
+                    }
+                }
+                batch.clear();
+                statistics.addTime(GenerationStatistics.Phase.SELECTION, startTime);
+            }
+        }
+
+        // Extract chromosomes from the worst to the best one
+        long startTime = System.nanoTime();
+        ArrayList<Chromosome> descendants = new ArrayList<>(bestDescendants.size());
+        while (!bestDescendants.isEmpty()) {
+            descendants.add(bestDescendants.poll().chromosome);
+        }
+        Collections.reverse(descendants);
+        statistics.addTime(GenerationStatistics.Phase.SELECTION, startTime);
+
+        return descendants;
+    }
+
+    /**
+     * Evaluate chromosomes by the evaluator.
+     * If there is the surrogate, all mutated chromosomes are estimated by it at the low resolution,
+     * and only the best part of them is evaluated at the full resolution.
+     * Other chromosomes are dropped, so they can't be selected.
+     * Chromosomes without the single changed block are always evaluated.
+     * <p>
+     * Each mutated chromosome with the sample period is evaluated at the full resolution too, whether it is dropped or not,
+     * and the agreement of the surrogate is measured on these chromosomes only.
+     * The best part alone would measure only how the surrogate orders good chromosomes.
+     * Sampled chromosomes which are dropped are still not selected, so the sample doesn't change the result.
+     *
+     * @param chromosome  parent of chromosomes
+     * @param chromosomes chromosomes to evaluate
+     * @param surrogate   approximate fitness, or null to evaluate all chromosomes
+     * @param ranking     ranking where estimations of sampled chromosomes are added, or null
+     * @return evaluated chromosomes in the same order
+     */
+    private static ArrayList<Chromosome> evaluate(Chromosome chromosome, ArrayList<Chromosome> chromosomes, BufferedImage sourceImage,
+                                                  Evaluator evaluator, Surrogate surrogate, SurrogateRanking ranking,
+                                                  GenerationStatistics statistics) {
+        if (surrogate == null) {
+            evaluator.evaluate(chromosomes, sourceImage, statistics);
+            return chromosomes;
+        }
+
+        long startTime = System.nanoTime();
+        double[] estimations = new double[chromosomes.size()];
+        ArrayList<Integer> mutated = new ArrayList<>(chromosomes.size());
+        for (int i = 0; i < chromosomes.size(); i++) {
+            if (chromosomes.get(i).getChangedBlock() >= 0) {
+                estimations[i] = surrogate.estimate(chromosome, chromosomes.get(i));
+                mutated.add(i);
+            }
+        }
+        // The sort is stable, so chromosomes with equal estimations are chosen in the order of generation
+        mutated.sort(Comparator.comparingDouble(i -> estimations[i]));
+        int amountRefined = (int) Math.ceil(mutated.size() * surrogate.getFraction());
+
+        boolean[] refined = new boolean[chromosomes.size()];
+        boolean[] sampled = new boolean[chromosomes.size()];
+        for (int i = 0; i < chromosomes.size(); i++) {
+            refined[i] = chromosomes.get(i).getChangedBlock() < 0;
+            // Chromosomes are sampled in the order of generation, which doesn't depend on estimations
+            sampled[i] = !refined[i] && ranking.sample();
+        }
+        for (int i = 0; i < amountRefined; i++) {
+            refined[mutated.get(i)] = true;
+        }
+        ArrayList<Chromosome> evaluated = new ArrayList<>(amountRefined + 1);
+        ArrayList<Chromosome> measured = new ArrayList<>(amountRefined + 1);
+        for (int i = 0; i < chromosomes.size(); i++) {
+            if (refined[i]) {
+                evaluated.add(chromosomes.get(i));
+            }
+            if (refined[i] || sampled[i]) {
+                measured.add(chromosomes.get(i));
+            }
+        }
+        statistics.addTime(GenerationStatistics.Phase.SURROGATE, startTime);
+
+        evaluator.evaluate(measured, sourceImage, statistics);
+
+        for (int i = 0; i < chromosomes.size(); i++) {
+            if (sampled[i]) {
+                ranking.add(estimations[i], chromosomes.get(i).getRMSD());
+            }
+        }
+        return evaluated;
+    }
+
     /**
      * Create chromosome by selecting genes from parents.
      * It selects genes randomly from one of the given parent,
-     * or, as the heuristic, it can select the best gene of given parents to make the algorithm working faster
+     * or, as the heuristic, it can select the best gene of given parents to make the algorithm working faster.
+     * <p>
+     * Parents are already evaluated, so their errors of blocks form the matrix
+     * which is used to select genes without comparing images again.
+     * The image and the RMSD value of the child are also composed from the parents' blocks.
      *
      * @param chromosomes parents
-     * @param sourceImage original image
      * @return crossover chromosome
      */
-    private static Chromosome crossover(ArrayList<Chromosome> chromosomes, BufferedImage sourceImage) {
-        Chromosome chromosome = new Chromosome(chromosomes.get(0));
-
-        for (int i = 0; i < chromosome.getBlockNumbersY(); i++) {
-            for (int j = 0; j < chromosome.getBlockNumbersX(); j++) {
-                // Option 1. Select the gene randomly
-                //Block block = getRandomBlock(chromosomes, i, j);
+    private static Chromosome crossover(ArrayList<Chromosome> chromosomes) {
+        // Errors of blocks for each parent
+        double[][] errorMatrix = new double[chromosomes.size()][];
+        for (int i = 0; i < chromosomes.size(); i++) {
+            errorMatrix[i] = chromosomes.get(i).getBlockErrors();
+        }
 
-                // Option 2. Select the best gene for the heuristic.
-                Gene gene = getBestBlock(chromosomes, sourceImage, i, j);
+        // Index of the parent for each gene
+        int[] sources = new int[errorMatrix[0].length];
+        for (int i = 0; i < sources.length; i++) {
+            // Option 1. Select the gene randomly
+            //sources[i] = getRandomBlock(chromosomes, random);
 
-                chromosome.setBlock(gene, i, j);
-            }
+            // Option 2. Select the best gene for the heuristic.
+            sources[i] = getBestBlock(errorMatrix, i);
         }
 
-        // Calculate fields for the created child chromosome
-        chromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight(), sourceImage.getType());
-        BufferedImage image = chromosome.getImage();
-        double RMSD = Calculation.calculateRootMeanSquareDeviation(sourceImage, image);
-        chromosome.setRMSD(RMSD);
+        return new Chromosome(chromosomes, sources);
+    }
 
-        return chromosome;
+    /**
+     * Combine the chromosome with the chromosome of other lineage
+     * by selecting the best gene of them for each block
+     *
+     * @param chromosome evaluated chromosome
+     * @param migrant    evaluated chromosome of other lineage
+     * @return chromosome which is not worse than both of them
+     */
+    public static Chromosome merge(Chromosome chromosome, Chromosome migrant) {
+        ArrayList<Chromosome> chromosomes = new ArrayList<>(2);
+        chromosomes.add(chromosome);
+        chromosomes.add(migrant);
+        return crossover(chromosomes);
     }
 
     /**
-     * Select the particular gene randomly from given parents
+     * Select the parent of the particular gene randomly
      *
      * @param chromosomes parents
-     * @param y           gene y coordinate
-     * @param x           gene x coordinate
-     * @return gene from one of the parent
+     * @param random      source of random numbers
+     * @return index of the parent
      */
-    private static Gene getRandomBlock(ArrayList<Chromosome> chromosomes, int y, int x) {
-        int chromosomeIndex = Calculation.getRandomNumber(0, chromosomes.size());
-        return new Gene(chromosomes.get(chromosomeIndex).getGene(y, x));
+    private static int getRandomBlock(ArrayList<Chromosome> chromosomes, RandomSource random) {
+        return random.nextInt(0, chromosomes.size());
     }
 
     /**
-     * Select the best gene from given parents according to the source image.
+     * Select the parent with the best gene according to the source image.
+     * Blocks of all parents have the same size, so the least squared error
+     * means the least Root Mean Square Deviation.
      *
-     * @param chromosomes parents
-     * @param sourceImage original image
-     * @param y           gene y coordinate
-     * @param x           gene x coordinate
-     * @return best gene
+     * @param errorMatrix errors of blocks for each parent
+     * @param block       gene index
+     * @return index of the first parent with the best gene
      */
-    private static Gene getBestBlock(ArrayList<Chromosome> chromosomes, BufferedImage sourceImage, int y, int x) {
+    private static int getBestBlock(double[][] errorMatrix, int block) {
+        int bestParent = 0;
+        for (int i = 1; i < errorMatrix.length; i++) {
+            if (errorMatrix[i][block] < errorMatrix[bestParent][block]) {
+                bestParent = i;
+            }
+        }
+        return bestParent;
+    }
 
-        int mazeSizeY = sourceImage.getHeight() / chromosomes.get(0).getBlockNumbersY();
-        int mazeSizeX = sourceImage.getWidth() / chromosomes.get(0).getBlockNumbersX();
+    /**
+     * Estimations of the surrogate and RMSD values of chromosomes sampled in one generation
+     */
+    private static class SurrogateRanking {
+        final ArrayList<Double> estimations = new ArrayList<>();
+        final ArrayList<Double> RMSDs = new ArrayList<>();
+        final int samplePeriod;
+        // Number of mutated chromosomes of the generation which are considered for the sample
+        int count;
 
-        ArrayList<Gene> genes = new ArrayList<>(chromosomes.size());
+        SurrogateRanking(int samplePeriod) {
+            this.samplePeriod = samplePeriod;
+        }
 
-        // Calculate Root Mean Square Deviation for each gene
-        for (Chromosome chromosome : chromosomes) {
-            BufferedImage image = chromosome.getImage();
+        /**
+         * Check whether the next mutated chromosome of the generation belongs to the sample
+         */
+        boolean sample() {
+            return count++ % samplePeriod == 0;
+        }
 
-            int startX = mazeSizeX * x;
-            int startY = mazeSizeY * y;
-            int endX = mazeSizeX * (x + 1);
-            int endY = mazeSizeY * (y + 1);
+        void add(double estimation, double RMSD) {
+            estimations.add(estimation);
+            RMSDs.add(RMSD);
+        }
 
-            double RMSD = Calculation.calculateRootMeanSquareDeviation(sourceImage, image, startX, startY, endX, endY);
-            Gene gene = new Gene(chromosome.getGene(y, x));
-            gene.setRMSD(RMSD);
-            genes.add(gene);
+        /**
+         * Get the rank correlation of estimations and RMSD values
+         */
+        double getAgreement() {
+            double[] first = new double[estimations.size()];
+            double[] second = new double[RMSDs.size()];
+            for (int i = 0; i < first.length; i++) {
+                first[i] = estimations.get(i);
+                second[i] = RMSDs.get(i);
+            }
+            return Surrogate.calculateSpearman(first, second);
         }
+    }
 
-        // Sort genes by RMSD value
-        Comparator<Gene> compareByRMSD = Comparator.comparing(Gene::getRMSD);
-        genes.sort(compareByRMSD);
+    /**
+     * Evaluated chromosome with its position in the population
+     */
+    private static class Candidate {
+        final Chromosome chromosome;
+        final long index;
 
-        // Return the best gene
-        return genes.get(0);
+        Candidate(Chromosome chromosome, long index) {
+            this.chromosome = chromosome;
+            this.index = index;
+        }
     }
 }
@@ -0,0 +1,404 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The single run of the algorithm for one source image.
+ * It creates its own output, statistics and checkpoint files,
+ * and evaluates populations in the given pool, which can be shared by several runs.
+ * <p>
+ * The color palette of the run belongs to the thread which runs it, and random numbers belong to the run itself,
+ * so runs for different images can be executed at once in different threads.
+ * Runs with the same seed produce the same images regardless of the number of threads,
+ * also in the island mode and after the restart from the checkpoint (exactly for the RMSD metric).
+ */
+public class EvolutionaryAlgorithm implements Runnable {
+    private final Parameters parameters;
+    private final ForkJoinPool pool;
+    private final boolean printName;
+
+    /**
+     * @param parameters parameters of the run
+     * @param pool       threads for the evaluation of populations,
+     *                   or null to evaluate them in the thread of the run
+     * @param printName  whether to print the name of the image before the messages of the run
+     */
+    EvolutionaryAlgorithm(Parameters parameters, ForkJoinPool pool, boolean printName) {
+        this.parameters = parameters;
+        this.pool = pool;
+        this.printName = printName;
+    }
+
+    @Override
+    public void run() {
+        // Continue the algorithm from the last checkpoint if it's asked
+        Checkpoint checkpoint = null;
+        if (parameters.isResume()) {
+            checkpoint = readCheckpoint();
+        }
+
+        // Prepare necessary files for the algorithm:
+        // create folders and files
+        createFolders();
+        BufferedImage sourceImage = readSourceImage();
+        if (sourceImage == null) {
+            return;
+        }
+        PrintWriter statisticsFile = createStatisticsFile(checkpoint);
+        if (statisticsFile == null) {
+            return;
+        }
+
+        // Start the algorithm itself
+        try {
+            startEvolutionaryAlgorithm(sourceImage, statisticsFile, checkpoint);
+        } finally {
+            statisticsFile.close();
+        }
+    }
+
+    /**
+     * Evolutionary algorithm for generating an image with respect to the source image
+     *
+     * @param sourceImage    reference image
+     * @param statisticsFile - file for writing the stats
+     * @param checkpoint     - state to continue the algorithm from, or null to start it from the beginning
+     */
+    private void startEvolutionaryAlgorithm(BufferedImage sourceImage, PrintWriter statisticsFile, Checkpoint checkpoint) {
+        // Start timer
+        long startTime = System.nanoTime();
+
+        // Fitness function, its data of the source image is calculated once
+        Metric metric = parameters.getMetric().create(sourceImage);
+
+        Chromosome chromosome;
+        int firstGeneration = 0;
+        RandomSource random;
+        if (checkpoint == null) {
+            // Random numbers start from the given seed, or from the new one
+            long seed = parameters.isFixedSeed() ? parameters.getSeed() : System.nanoTime() ^ Thread.currentThread().getId();
+            random = new RandomSource(seed);
+            print("Seed: " + seed);
+
+            // Calculate main colors which are used in the source image
+            Calculation.calculateColorPalette(sourceImage, parameters.getPaletteSize());
+
+            // Create the blank chromosome, islands create their own ones
+            chromosome = parameters.getAmountOfIslands() > 1 ? null : new Chromosome(parameters.getBlockNumbersY(),
+                    parameters.getBlockNumbersX(), parameters.getBlockSizeY(), parameters.getBlockSizeX(), random);
+        } else {
+            // Restore the state of the algorithm
+            Calculation.setColorPalette(checkpoint.getColorPalette());
+            random = new RandomSource(checkpoint.getRandomState());
+            chromosome = checkpoint.getChromosome();
+            // Errors of blocks guide mutations of the next generation as they did before the checkpoint
+            evaluate(chromosome, metric);
+            for (Chromosome islandChromosome : checkpoint.getIslandChromosomes()) {
+                evaluate(islandChromosome, metric);
+            }
+            firstGeneration = checkpoint.getGeneration();
+            startTime -= checkpoint.getTime();
+        }
+
+        // Thread for writing results
+        FrameSink frameSink = createFrameSink(sourceImage, firstGeneration);
+        OutputWriter outputWriter = new OutputWriter(statisticsFile, frameSink, parameters.getOutputQueueSize(),
+                parameters.getOutputPeriod(), parameters.isOutputOnlyImprovements());
+
+        // Islands, connections to workers and the writer thread are closed even if the algorithm fails,
+        // otherwise the writer thread would keep the program running
+        IslandModel islands = null;
+        RemoteEvaluator remoteEvaluator = null;
+        try {
+            // Fast estimation of mutated chromosomes at the low resolution
+            Surrogate surrogate = null;
+            if (parameters.getSurrogateFraction() > 0) {
+                surrogate = new Surrogate(sourceImage, parameters.getBlockNumbersY(), parameters.getBlockNumbersX(),
+                        parameters.getBlockSizeY(), parameters.getBlockSizeX(), parameters.getSurrogateFraction(),
+                        parameters.getSurrogateSamplePeriod());
+            }
+
+            // Independent lineages which run in their own threads
+            if (parameters.getAmountOfIslands() > 1) {
+                if (checkpoint != null && checkpoint.getIslandChromosomes().length == parameters.getAmountOfIslands()) {
+                    // Islands continue from their own states
+                    islands = new IslandModel(parameters, metric, surrogate, pool, checkpoint.getIslandRandoms(),
+                            checkpoint.getIslandChromosomes(), firstGeneration);
+                } else {
+                    islands = new IslandModel(parameters, metric, surrogate, pool, random, chromosome, firstGeneration);
+                }
+            }
+
+            // Populations are evaluated by threads or by worker processes
+            LocalEvaluator localEvaluator = new LocalEvaluator(pool, metric, parameters.isTiledEvaluation());
+            if (islands == null && !parameters.getWorkers().isEmpty()) {
+                remoteEvaluator = new RemoteEvaluator(parameters.getWorkers(), metric, parameters.getRemoteBatchSize(), localEvaluator);
+            }
+            Evaluator evaluator = remoteEvaluator != null ? remoteEvaluator : localEvaluator;
+
+            // Mutated blocks are chosen according to their errors if it's asked
+            BlockSampler sampler = null;
+            if (parameters.isErrorGuidedMutation()) {
+                sampler = new BlockSampler(parameters.getBlockNumbersY() * parameters.getBlockNumbersX(), parameters.getExplorationFloor(),
+                        parameters.getMetric());
+            }
+
+            // Conditions to stop before the last generation
+            StopCriteria stopCriteria = new StopCriteria(parameters.getTargetRMSD(), parameters.getPlateauGenerations(),
+                    parameters.getPlateauEpsilon(), parameters.getTimeLimit() * 1_000_000_000L);
+
+            // Create generations
+            int amountOfGenerations = parameters.getAmountOfGenerations();
+            for (int i = firstGeneration; i < amountOfGenerations; i++) {
+                // Time of phases, allocation and garbage collection of the generation
+                GenerationStatistics statistics;
+
+                if (islands == null) {
+                    statistics = new GenerationStatistics();
+                    // Create new population for the next generation
+                    long allocation = statistics.startAllocation();
+                    try {
+                        chromosome = Evolution.nextGeneration(chromosome, parameters.getAmountOfPopulations(), parameters.getAmountOfSiblings(),
+                                parameters.getAmountOfBestDescendants(), parameters.getColoring(), sampler, random, sourceImage, evaluator, surrogate, parameters.getSelectionBatchSize(), statistics);
+                    } finally {
+                        statistics.stopAllocation(allocation);
+                    }
+                } else {
+                    // Take the best chromosome of all islands in this generation
+                    chromosome = islands.awaitGeneration(i + 1);
+                    statistics = islands.getStatistics();
+                }
+
+                // Get time
+                long currentTime = System.nanoTime();
+
+                // Save the result: the best chromosome of the new generation
+                // and intermediate results
+                String result = "Generation: " + (i + 1) + "; Difference: " + chromosome.getRMSD() + "; Time: " + (currentTime - startTime) + ";";
+                if (islands != null) {
+                    result += " Islands: " + formatIslandRMSDs(islands.getIslandRMSDs()) + ";";
+                }
+                print(result);
+                String stopReason = stopCriteria.check(chromosome.getRMSD(), currentTime - startTime);
+                boolean last = i + 1 == amountOfGenerations || stopReason != null;
+                long outputTime = System.nanoTime();
+                long outputAllocation = statistics.startAllocation();
+                try {
+                    // The image is drawn only if the writer takes it
+                    Chromosome bestChromosome = chromosome;
+                    outputWriter.writeImage(i + 1, () -> {
+                        // Chromosomes evaluated by tiles are not drawn, the copy is drawn because islands can still use the chromosome
+                        Chromosome drawnChromosome = new Chromosome(bestChromosome);
+                        drawnChromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+                        return drawnChromosome.getImage();
+                    }, chromosome.getRMSD(), last);
+                } finally {
+                    statistics.stopAllocation(outputAllocation);
+                }
+                statistics.addTime(GenerationStatistics.Phase.OUTPUT, outputTime);
+
+                statistics.finish(i + 1, chromosome.getRMSD());
+                outputWriter.writeStatistics(statistics.toCSV(i + 1, chromosome.getRMSD(), currentTime - startTime));
+
+                // Save the state of the algorithm to continue it later
+                if ((i + 1) % parameters.getCheckpointPeriod() == 0 || stopReason != null) {
+                    Checkpoint newCheckpoint = new Checkpoint(i + 1, currentTime - startTime,
+                            random.getState(), Calculation.getColorPalette(), chromosome,
+                            islands != null ? islands.getIslandRandoms() : new RandomSource[0],
+                            islands != null ? islands.getIslandChromosomes() : new Chromosome[0]);
+                    saveCheckpoint(newCheckpoint);
+                }
+
+                if (stopReason != null) {
+                    print("The algorithm is stopped: " + stopReason);
+                    break;
+                }
+            }
+        } finally {
+            if (islands != null) {
+                islands.stop();
+            }
+            if (remoteEvaluator != null) {
+                remoteEvaluator.close();
+            }
+            outputWriter.close();
+        }
+    }
+
+    /**
+     * Calculate RMSD and errors of blocks of the chromosome restored from the checkpoint
+     */
+    private void evaluate(Chromosome chromosome, Metric metric) {
+        if (parameters.isTiledEvaluation()) {
+            chromosome.calculateRMSDByTiles(metric);
+        } else {
+            BufferedImage sourceImage = metric.getSourceImage();
+            chromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+            chromosome.calculateRMSD(metric);
+        }
+    }
+
+    /**
+     * Join RMSD values of islands by commas
+     */
+    private static String formatIslandRMSDs(double[] RMSDs) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < RMSDs.length; i++) {
+            line.append(i > 0 ? ", " : "").append(RMSDs[i]);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Create the destination of images according to the output format.
+     * Files of the animation have the number of the first generation in their names
+     * if the algorithm is continued from the checkpoint.
+     *
+     * @param sourceImage     reference image
+     * @param firstGeneration number of the already completed generations
+     * @return destination of images
+     */
+    private FrameSink createFrameSink(BufferedImage sourceImage, int firstGeneration) {
+        String outputPath = parameters.getOutputPath();
+        String animationPath = parameters.getOutputFolder() + "evolution" + (firstGeneration > 0 ? "_" + (firstGeneration + 1) : "");
+        try {
+            switch (parameters.getOutputFormat()) {
+                case "gif":
+                    return new GifFrameSink(animationPath + ".gif", parameters.getAnimationFrameDelay());
+                case "raw":
+                    int maxFrames = (parameters.getAmountOfGenerations() - firstGeneration) / parameters.getOutputPeriod() + 1;
+                    return new RawFrameSink(animationPath + ".raw", sourceImage.getWidth(), sourceImage.getHeight(), maxFrames);
+                default:
+                    return new JpegFrameSink(outputPath);
+            }
+        } catch (IOException e) {
+            print("File " + animationPath + " can't be created! Images are saved to separate files.");
+            return new JpegFrameSink(outputPath);
+        }
+    }
+
+    /**
+     * Save the checkpoint of the algorithm
+     */
+    private void saveCheckpoint(Checkpoint checkpoint) {
+        String checkpointPath = parameters.getCheckpointPath();
+        try {
+            checkpoint.write(checkpointPath);
+        } catch (IOException e) {
+            print("Checkpoint " + checkpointPath + " can't be saved!");
+        }
+    }
+
+    /**
+     * Read the last checkpoint of the algorithm
+     *
+     * @return checkpoint, or null if it can't be read
+     */
+    private Checkpoint readCheckpoint() {
+        String checkpointPath = parameters.getCheckpointPath();
+        Checkpoint checkpoint = null;
+        try {
+            checkpoint = Checkpoint.read(checkpointPath);
+        } catch (IOException e) {
+            print("Checkpoint " + checkpointPath + " can't be read! The algorithm starts from the beginning.");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Create necessary folders for the algorithm, if they don't exist
+     */
+    private void createFolders() {
+        new File(parameters.getOutputFolder()).mkdirs();
+        new File("statistics/").mkdirs();
+        new File("checkpoints/").mkdirs();
+    }
+
+    /**
+     * Read input image file
+     *
+     * @return BufferedImage object of the BufferedImage.TYPE_INT_RGB type, or null if it can't be read
+     */
+    private BufferedImage readSourceImage() {
+        String inputPath = parameters.getInputPath();
+        BufferedImage sourceImage = null;
+        try {
+            BufferedImage image = ImageIO.read(new File(inputPath));
+            if (image != null) {
+                // Pixels of the image are accessed directly as packed RGB values
+                sourceImage = Calculation.toPackedRGB(image);
+            } else {
+                print("File " + inputPath + " is not an image!");
+            }
+        } catch (IOException e) {
+            print("File " + inputPath + " doesn't exist!");
+        }
+        return sourceImage;
+    }
+
+    /**
+     * Create CSV file to write the statistics (intermediate results).
+     * If the algorithm is continued from the checkpoint, the file keeps only generations which are not after the checkpoint,
+     * so generations which are repeated after the restart are not written twice.
+     *
+     * @param checkpoint state the algorithm is continued from, or null to start the new file
+     * @return reference to the file, or null if it can't be created
+     */
+    private PrintWriter createStatisticsFile(Checkpoint checkpoint) {
+        String statisticsPath = parameters.getStatisticsPath();
+        PrintWriter statisticsFile = null;
+        try {
+            List<String> lines = checkpoint != null ? readStatistics(statisticsPath, checkpoint.getGeneration()) : List.of();
+            statisticsFile = new PrintWriter(new FileOutputStream(statisticsPath));
+            statisticsFile.println(GenerationStatistics.CSV_HEADER);
+            for (String line : lines) {
+                statisticsFile.println(line);
+            }
+        } catch (IOException e) {
+            print("File " + statisticsPath + " can't be created!");
+        }
+        return statisticsFile;
+    }
+
+    /**
+     * Read lines of generations from the statistics file
+     *
+     * @param statisticsPath path of the file
+     * @param lastGeneration number of the last generation which is kept
+     * @return lines without the header, or the empty list if there is no file
+     */
+    private static List<String> readStatistics(String statisticsPath, int lastGeneration) throws IOException {
+        java.nio.file.Path path = Paths.get(statisticsPath);
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            int separator = line.indexOf(',');
+            try {
+                if (separator > 0 && Integer.parseInt(line.substring(0, separator)) <= lastGeneration) {
+                    lines.add(line);
+                }
+            } catch (NumberFormatException e) {
+                // The header or the broken line
+            }
+        }
+        return lines;
+    }
+
+    private void print(String message) {
+        if (printName) {
+            System.out.println(parameters.getInputImageName() + ": " + message);
+        } else {
+            System.out.println(message);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Destination of images of generations
+ */
+public interface FrameSink {
+
+    /**
+     * Write the image of the generation
+     */
+    void write(int generation, BufferedImage image) throws IOException;
+
+    /**
+     * Finish writing, no images can be written after that
+     */
+    void close() throws IOException;
+}
@@ -1,4 +1,11 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The gene is the part of the chromosome.
@@ -11,131 +18,475 @@ import java.util.ArrayList;
  * <p>
  * In other words, the gene is the block of pixels
  * which represents the maze of paths.
+ * <p>
+ * The gene is immutable, so chromosomes share unchanged genes.
+ * <p>
+ * Paths are kept in the compact code, and they are decoded each time they are taken.
+ * Each path is written as:
+ * the index y * blockSizeX + x of its first cell and the number of its moves as variable-length numbers,
+ * the index of its color in the color palette as one byte or 255 and three bytes of the packed RGB color,
+ * and moves by 2 bits (down, up, right, left), four moves per byte.
+ * So the gene of 8x8 cells takes about a hundred bytes instead of kilobytes of objects.
  */
 public class Gene {
+    // Value of the color byte when the color is not in the palette
+    private static final int COLOR_ESCAPE = 255;
+    private static final int MOVE_DOWN = 0;
+    private static final int MOVE_UP = 1;
+    private static final int MOVE_RIGHT = 2;
+    private static final int MOVE_LEFT = 3;
+
     private final int blockSizeY;
     private final int blockSizeX;
-    private Double RMSD;
-    private ArrayList<Path> paths;
+    private final byte[] code;
+    // Palette which indexes of colors refer to, or null
+    private final int[] palette;
 
-    Gene(int blockSizeY, int blockSizeX) {
+    /**
+     * Create the gene with randomly generated and colored paths
+     */
+    Gene(int blockSizeY, int blockSizeX, RandomSource random) {
         this.blockSizeY = blockSizeY;
         this.blockSizeX = blockSizeX;
-        this.paths = new ArrayList<>();
+        this.palette = Calculation.getColorPalette();
+        this.code = encode(fillMaze(random), blockSizeX, palette);
     }
 
-    Gene(Gene gene) {
-        this.blockSizeY = gene.getBlockSizeY();
-        this.blockSizeX = gene.getBlockSizeX();
-        this.RMSD = gene.getRMSD();
-        ArrayList<Path> blockPaths = gene.getPaths();
+    /**
+     * Create the gene with given paths, colors are indexed in the color palette of the thread
+     */
+    Gene(int blockSizeY, int blockSizeX, List<Path> paths) {
+        this(blockSizeY, blockSizeX, paths, Calculation.getColorPalette());
+    }
 
-        this.paths = new ArrayList<>();
-        for (Path path : blockPaths) {
-            this.paths.add(new Path(path));
+    private Gene(int blockSizeY, int blockSizeX, List<Path> paths, int[] palette) {
+        this.blockSizeY = blockSizeY;
+        this.blockSizeX = blockSizeX;
+        this.palette = palette;
+        this.code = encode(paths, blockSizeX, palette);
+    }
+
+    private Gene(int blockSizeY, int blockSizeX, byte[] code, int[] palette) {
+        this.blockSizeY = blockSizeY;
+        this.blockSizeX = blockSizeX;
+        this.code = code;
+        this.palette = palette;
+    }
+
+    /**
+     * Create the gene from its code
+     *
+     * @param code    code of the gene, the array must not be modified after that
+     * @param palette palette which was given to getCode
+     */
+    static Gene fromCode(int blockSizeY, int blockSizeX, byte[] code, int[] palette) {
+        return new Gene(blockSizeY, blockSizeX, code, palette);
+    }
+
+    /**
+     * Create the gene with the same paths, but colored randomly
+     */
+    public Gene colorMaze(RandomSource random) {
+        List<Path> paths = getPaths();
+        ArrayList<Path> coloredPaths = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            coloredPaths.add(path.withColor(Calculation.getRandomColor(random)));
         }
+        return new Gene(blockSizeY, blockSizeX, coloredPaths);
     }
 
     /**
-     * Create paths for the gene
+     * Create the gene with the same paths, but with given colors
+     *
+     * @param colors packed RGB color of each path
      */
-    public void fillMaze() {
-        ArrayList<Cell> visitedCells = new ArrayList<>(blockSizeY * blockSizeX);
-        ArrayList<Cell> unVisitedCells = new ArrayList<>(blockSizeY * blockSizeX);
-        for (int i = 0; i < blockSizeY; i++) {
-            for (int j = 0; j < blockSizeX; j++) {
-                unVisitedCells.add(new Cell(i, j));
-            }
+    public Gene withColors(int[] colors) {
+        List<Path> paths = getPaths();
+        ArrayList<Path> coloredPaths = new ArrayList<>(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            coloredPaths.add(paths.get(i).withColor(colors[i]));
         }
-        this.paths = new ArrayList<>();
+        return new Gene(blockSizeY, blockSizeX, coloredPaths, palette);
+    }
+
+    public int getBlockSizeY() {
+        return blockSizeY;
+    }
 
-        while (visitedCells.size() != blockSizeY * blockSizeX) {
-            int randomUnVisitedCellIndex = Calculation.getRandomNumber(0, unVisitedCells.size());
-            Cell unVisitedCell = unVisitedCells.get(randomUnVisitedCellIndex);
-            Path newPath = generatePath(unVisitedCell, visitedCells, unVisitedCells);
-            paths.add(newPath);
+    public int getBlockSizeX() {
+        return blockSizeX;
+    }
+
+    /**
+     * Get paths of the gene. The list can't be modified.
+     * Paths are decoded on each call, so the list should be kept while it is used.
+     * Hot loops read paths by the cursor instead, it doesn't create objects.
+     */
+    public List<Path> getPaths() {
+        ArrayList<Path> paths = new ArrayList<>();
+        PathCursor cursor = new PathCursor();
+        cursor.start(this);
+        while (cursor.next()) {
+            paths.add(new Path(Arrays.copyOf(cursor.pathY, cursor.size), Arrays.copyOf(cursor.pathX, cursor.size), cursor.color));
         }
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Get the code of the gene whose colors are indexed in the given palette
+     *
+     * @param palette color palette, or null to write all colors as RGB
+     * @return code which must not be modified
+     */
+    byte[] getCode(int[] palette) {
+        return palette == this.palette ? code : encode(getPaths(), blockSizeX, palette);
     }
 
-    public void colorMaze() {
+    /**
+     * Write paths to the compact code
+     *
+     * @param paths      paths whose neighbour cells differ by one move
+     * @param blockSizeX number of cells of the block along the x coordinate
+     * @param palette    color palette, or null
+     */
+    private static byte[] encode(List<Path> paths, int blockSizeX, int[] palette) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
         for (Path path : paths) {
-            path.setColor(Calculation.getRandomColor());
+            writeNumber(output, path.getY(0) * blockSizeX + path.getX(0));
+            writeNumber(output, path.size() - 1);
+
+            int color = path.getColor();
+            int index = palette == null ? -1 : indexOf(palette, color);
+            if (index >= 0) {
+                output.write(index);
+            } else {
+                output.write(COLOR_ESCAPE);
+                output.write(color >> 16);
+                output.write(color >> 8);
+                output.write(color);
+            }
+
+            int movesByte = 0;
+            for (int i = 1; i < path.size(); i++) {
+                int move = getMove(path.getY(i) - path.getY(i - 1), path.getX(i) - path.getX(i - 1));
+                movesByte |= move << ((i - 1) % 4 * 2);
+                if (i % 4 == 0 || i == path.size() - 1) {
+                    output.write(movesByte);
+                    movesByte = 0;
+                }
+            }
         }
+        return output.toByteArray();
     }
 
-    public void setRMSD(Double RMSD) {
-        this.RMSD = RMSD;
+    private static int getMove(int dy, int dx) {
+        if (dy == 1 && dx == 0) {
+            return MOVE_DOWN;
+        }
+        if (dy == -1 && dx == 0) {
+            return MOVE_UP;
+        }
+        if (dy == 0 && dx == 1) {
+            return MOVE_RIGHT;
+        }
+        if (dy == 0 && dx == -1) {
+            return MOVE_LEFT;
+        }
+        throw new IllegalArgumentException("Cells of the path are not neighbours");
     }
 
-    public Double getRMSD() {
-        return RMSD;
+    /**
+     * Get the index of the color among the first 255 colors of the palette, or -1
+     */
+    private static int indexOf(int[] palette, int color) {
+        int length = Math.min(palette.length, COLOR_ESCAPE);
+        for (int i = 0; i < length; i++) {
+            if (palette[i] == color) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    public int getBlockSizeY() {
-        return blockSizeY;
+    /**
+     * Write the non-negative number by 7 bits, the highest bit means that the next byte follows
+     */
+    static void writeNumber(ByteArrayOutputStream output, int number) {
+        while (number >= 0x80) {
+            output.write(number & 0x7F | 0x80);
+            number >>>= 7;
+        }
+        output.write(number);
     }
 
-    public int getBlockSizeX() {
-        return blockSizeX;
+    /**
+     * Read the number written by 'writeNumber' and move the position after it
+     */
+    static int readNumber(byte[] code, int[] position) {
+        int number = 0;
+        int shift = 0;
+        int value;
+        do {
+            value = code[position[0]++];
+            number |= (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0);
+        return number;
+    }
+
+    /**
+     * Write the non-negative number to the stream in the same way as to the code
+     */
+    static void writeNumber(DataOutput output, int number) throws IOException {
+        while (number >= 0x80) {
+            output.writeByte(number & 0x7F | 0x80);
+            number >>>= 7;
+        }
+        output.writeByte(number);
     }
 
-    public ArrayList<Path> getPaths() {
-        return new ArrayList<>(paths);
+    /**
+     * Read the number written to the stream by 'writeNumber'
+     */
+    static int readNumber(DataInput input) throws IOException {
+        int number = 0;
+        int shift = 0;
+        int value;
+        do {
+            value = input.readByte();
+            number |= (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0);
+        return number;
     }
 
     /**
-     * Calculate the path by running the Self-Avoiding algorithm
-     * (except this algorithm representation doesn't have the goal to fill the maze fully).
+     * Reads paths of genes one by one straight from their codes.
+     * Cells of the current path are kept in buffers of the cursor, which grow to the largest gene and are reused,
+     * so the cursor kept by the thread reads any number of genes without allocations.
      */
-    private Path generatePath(Cell startCell, ArrayList<Cell> visitedCells, ArrayList<Cell> unVisitedCells) {
-        Path path = new Path(new Cell(startCell));
-        visitedCells.add(new Cell(startCell));
-        unVisitedCells.remove(startCell);
+    static class PathCursor {
+        private int[] pathY = new int[0];
+        private int[] pathX = new int[0];
+        private Gene gene;
+        // Position of the next path in the code
+        private final int[] position = new int[1];
+        private int size;
+        private int color;
+        // Number of paths read from the gene
+        private int index;
 
-        while (true) {
-            Cell head = path.get(path.size() - 1);
-            Cell newHead = getRandomMove(head, visitedCells);
-            if (newHead == null) {
-                break;
+        /**
+         * Start reading paths of the gene, the previous gene is forgotten
+         */
+        void start(Gene gene) {
+            int cells = gene.blockSizeY * gene.blockSizeX;
+            if (pathY.length < cells) {
+                pathY = new int[cells];
+                pathX = new int[cells];
             }
-            visitedCells.add(new Cell(newHead));
-            unVisitedCells.remove(newHead);
-            path.add(newHead);
+            this.gene = gene;
+            position[0] = 0;
+            size = 0;
+            index = -1;
         }
 
-        return path;
-    }
+        /**
+         * Read the next path of the gene
+         *
+         * @return whether there is the path, or false if all paths are read
+         */
+        boolean next() {
+            byte[] code = gene.code;
+            if (position[0] >= code.length) {
+                return false;
+            }
+            int cell = readNumber(code, position);
+            int moves = readNumber(code, position);
+            color = code[position[0]++] & 0xFF;
+            if (color == COLOR_ESCAPE) {
+                color = (code[position[0]] & 0xFF) << 16 | (code[position[0] + 1] & 0xFF) << 8 | code[position[0] + 2] & 0xFF;
+                position[0] += 3;
+            } else {
+                color = gene.palette[color];
+            }
+
+            int y = cell / gene.blockSizeX;
+            int x = cell % gene.blockSizeX;
+            pathY[0] = y;
+            pathX[0] = x;
+            for (int i = 0; i < moves; i++) {
+                int move = (code[position[0] + i / 4] >> (i % 4 * 2)) & 3;
+                if (move == MOVE_DOWN) {
+                    y++;
+                } else if (move == MOVE_UP) {
+                    y--;
+                } else if (move == MOVE_RIGHT) {
+                    x++;
+                } else {
+                    x--;
+                }
+                pathY[i + 1] = y;
+                pathX[i + 1] = x;
+            }
+            position[0] += (moves + 3) / 4;
+            size = moves + 1;
+            index++;
+            return true;
+        }
+
+        /**
+         * Get the number of the current path in the gene, from 0
+         */
+        int getIndex() {
+            return index;
+        }
 
-    private Cell getRandomMove(Cell current, ArrayList<Cell> visitedCells) {
-        ArrayList<Cell> availableMoves = new ArrayList<>(4);
+        int getY(int index) {
+            return pathY[index];
+        }
 
-        Cell cell1 = new Cell(current.y + 1, current.x);
-        if (isValidCell(cell1, visitedCells)) {
-            availableMoves.add(cell1);
+        int getX(int index) {
+            return pathX[index];
         }
-        Cell cell2 = new Cell(current.y - 1, current.x);
-        if (isValidCell(cell2, visitedCells)) {
-            availableMoves.add(cell2);
+
+        /**
+         * Get the number of cells of the current path
+         */
+        int size() {
+            return size;
         }
-        Cell cell3 = new Cell(current.y, current.x + 1);
-        if (isValidCell(cell3, visitedCells)) {
-            availableMoves.add(cell3);
+
+        /**
+         * Get the packed RGB color of the current path
+         */
+        int getColor() {
+            return color;
         }
-        Cell cell4 = new Cell(current.y, current.x - 1);
-        if (isValidCell(cell4, visitedCells)) {
-            availableMoves.add(cell4);
+    }
+
+    /**
+     * Create colored paths for the gene
+     */
+    private ArrayList<Path> fillMaze(RandomSource random) {
+        Maze maze = new Maze(blockSizeY, blockSizeX);
+        ArrayList<Path> paths = new ArrayList<>();
+
+        // Buffers for coordinates of the current path
+        int[] pathY = new int[blockSizeY * blockSizeX];
+        int[] pathX = new int[blockSizeY * blockSizeX];
+
+        while (maze.hasUnVisitedCells()) {
+            int length = generatePath(maze, maze.getRandomUnVisitedCell(random), pathY, pathX, random);
+            paths.add(new Path(Arrays.copyOf(pathY, length), Arrays.copyOf(pathX, length), Calculation.getRandomColor(random)));
         }
 
-        if (availableMoves.size() == 0) {
-            return null;
+        return paths;
+    }
+
+    /**
+     * Calculate the path by running the Self-Avoiding algorithm
+     * (except this algorithm representation doesn't have the goal to fill the maze fully).
+     *
+     * @param startCell index of the first cell of the path
+     * @param pathY     buffer for y coordinates of the path
+     * @param pathX     buffer for x coordinates of the path
+     * @param random    source of random moves
+     * @return length of the path
+     */
+    private int generatePath(Maze maze, int startCell, int[] pathY, int[] pathX, RandomSource random) {
+        int length = 0;
+        int head = startCell;
+        while (head != -1) {
+            maze.visit(head);
+            pathY[length] = head / blockSizeX;
+            pathX[length] = head % blockSizeX;
+            length++;
+            head = maze.getRandomMove(head, random);
         }
-        return availableMoves.get((int) (Math.random() * availableMoves.size()));
+        return length;
     }
 
-    private boolean isValidCell(Cell cell, ArrayList<Cell> visitedCells) {
-        if (cell.x < 0 || cell.y < 0 || cell.x >= blockSizeX || cell.y >= blockSizeY) {
-            return false;
+    /**
+     * State of the maze while the paths are generated.
+     * The cell (y, x) is represented by the index y * blockSizeX + x,
+     * so the state is kept in primitive arrays and each operation takes constant time.
+     */
+    private static class Maze {
+        private final int blockSizeY;
+        private final int blockSizeX;
+        private final boolean[] visitedCells;
+        // The first 'unVisitedNumber' elements are unvisited cells.
+        // 'positions' keeps the index of each cell in this array,
+        // so the cell is removed by swapping it with the last unvisited cell.
+        private final int[] unVisitedCells;
+        private final int[] positions;
+        private int unVisitedNumber;
+
+        Maze(int blockSizeY, int blockSizeX) {
+            this.blockSizeY = blockSizeY;
+            this.blockSizeX = blockSizeX;
+            int cellsNumber = blockSizeY * blockSizeX;
+            visitedCells = new boolean[cellsNumber];
+            unVisitedCells = new int[cellsNumber];
+            positions = new int[cellsNumber];
+            for (int i = 0; i < cellsNumber; i++) {
+                unVisitedCells[i] = i;
+                positions[i] = i;
+            }
+            unVisitedNumber = cellsNumber;
+        }
+
+        boolean hasUnVisitedCells() {
+            return unVisitedNumber != 0;
+        }
+
+        int getRandomUnVisitedCell(RandomSource random) {
+            return unVisitedCells[random.nextInt(0, unVisitedNumber)];
+        }
+
+        void visit(int cell) {
+            visitedCells[cell] = true;
+
+            int position = positions[cell];
+            int lastCell = unVisitedCells[unVisitedNumber - 1];
+            unVisitedCells[position] = lastCell;
+            positions[lastCell] = position;
+            unVisitedCells[unVisitedNumber - 1] = cell;
+            positions[cell] = unVisitedNumber - 1;
+            unVisitedNumber--;
+        }
+
+        /**
+         * Get randomly one of unvisited neighbours of the cell:
+         * down, up, right or left.
+         *
+         * @return index of the neighbour, or -1 if there are no such cells
+         */
+        int getRandomMove(int cell, RandomSource random) {
+            int y = cell / blockSizeX;
+            int x = cell % blockSizeX;
+            boolean down = y + 1 < blockSizeY && !visitedCells[cell + blockSizeX];
+            boolean up = y > 0 && !visitedCells[cell - blockSizeX];
+            boolean right = x + 1 < blockSizeX && !visitedCells[cell + 1];
+            boolean left = x > 0 && !visitedCells[cell - 1];
+
+            int availableMoves = (down ? 1 : 0) + (up ? 1 : 0) + (right ? 1 : 0) + (left ? 1 : 0);
+            if (availableMoves == 0) {
+                return -1;
+            }
+
+            int move = random.nextInt(0, availableMoves);
+            if (down && move-- == 0) {
+                return cell + blockSizeX;
+            }
+            if (up && move-- == 0) {
+                return cell - blockSizeX;
+            }
+            if (right && move-- == 0) {
+                return cell + 1;
+            }
+            return cell - 1;
         }
-        return !visitedCells.contains(cell);
     }
 }
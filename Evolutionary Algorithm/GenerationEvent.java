@@ -0,0 +1,69 @@
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder event with the statistics of one generation.
+ * It is recorded when the program is run with the recording, for example:
+ * <pre>
+ * java -XX:StartFlightRecording=filename=evolution.jfr Main
+ * </pre>
+ */
+@Name("evolution.Generation")
+@Label("Generation")
+@Category("Evolutionary Algorithm")
+@Description("Time of phases, allocation, garbage collection and the surrogate agreement of one generation")
+@StackTrace(false)
+class GenerationEvent extends Event {
+    @Label("Generation")
+    int generation;
+
+    @Label("RMSD")
+    double RMSD;
+
+    @Label("Population Generation")
+    @Timespan(Timespan.NANOSECONDS)
+    long population;
+
+    @Label("Surrogate Fitness")
+    @Timespan(Timespan.NANOSECONDS)
+    long surrogate;
+
+    @Label("Rendering")
+    @Description("Total time of all threads")
+    @Timespan(Timespan.NANOSECONDS)
+    long rendering;
+
+    @Label("Fitness")
+    @Description("Total time of all threads")
+    @Timespan(Timespan.NANOSECONDS)
+    long fitness;
+
+    @Label("Selection")
+    @Timespan(Timespan.NANOSECONDS)
+    long selection;
+
+    @Label("Crossover")
+    @Timespan(Timespan.NANOSECONDS)
+    long crossover;
+
+    @Label("Output")
+    @Timespan(Timespan.NANOSECONDS)
+    long output;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by threads while they work for the generation")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("JVM GC Count")
+    @Description("Garbage collections of the whole virtual machine, including collections caused by other runs")
+    long gcCount;
+
+    @Label("JVM GC Time")
+    @Description("Time of garbage collections of the whole virtual machine, including collections caused by other runs")
+    @Timespan(Timespan.MILLISECONDS)
+    long gcTime;
+
+    @Label("Surrogate Agreement")
+    @Description("Spearman's rank correlation of the surrogate fitness and RMSD, NaN without the surrogate")
+    double surrogateAgreement;
+}
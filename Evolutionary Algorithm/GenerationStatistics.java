@@ -0,0 +1,189 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one generation: time of each phase of the algorithm,
+ * allocated memory, garbage collections and the agreement of the surrogate fitness with the full one.
+ * <p>
+ * Time of phases can be added from several threads.
+ * For rendering and fitness it is the total time of all threads which evaluate the population.
+ * <p>
+ * Allocated bytes are counted by each thread which works for the generation, from the start to the end of its work,
+ * so allocations of threads which are finished are not lost, and other runs of the program are not counted.
+ * Garbage collections are counted by the whole virtual machine, so they include collections caused by other runs.
+ * The statistics are written as the line of the CSV file and as the JDK Flight Recorder event.
+ */
+public class GenerationStatistics {
+
+    public enum Phase {
+        POPULATION, SURROGATE, RENDERING, FITNESS, SELECTION, CROSSOVER, OUTPUT
+    }
+
+    public static final String CSV_HEADER = "generation,rmsd,time_ns,population_ns,surrogate_ns,rendering_ns,fitness_ns,"
+            + "selection_ns,crossover_ns,output_ns,allocated_bytes,jvm_gc_count,jvm_gc_time_ms,surrogate_spearman";
+
+    // Number of nested countings of allocations in the current thread, only the outer one is added
+    private static final ThreadLocal<int[]> allocationDepth = ThreadLocal.withInitial(() -> new int[1]);
+    // Counter of bytes allocated by threads, or null if the virtual machine doesn't support it
+    private static final com.sun.management.ThreadMXBean allocationCounter = getAllocationCounter();
+
+    private final LongAdder[] times = new LongAdder[Phase.values().length];
+    private final LongAdder allocated = new LongAdder();
+    private final GenerationEvent event = new GenerationEvent();
+    private final long startGcCount;
+    private final long startGcTime;
+
+    private long allocatedBytes;
+    private long gcCount;
+    private long gcTime;
+    private volatile double surrogateAgreement = Double.NaN;
+
+    /**
+     * Start collecting the statistics of the generation
+     */
+    GenerationStatistics() {
+        for (int i = 0; i < times.length; i++) {
+            times[i] = new LongAdder();
+        }
+        startGcCount = getGcCount();
+        startGcTime = getGcTime();
+        event.begin();
+    }
+
+    /**
+     * Add the time to the phase
+     *
+     * @param phase     phase of the generation
+     * @param startTime value of System.nanoTime() when the phase was started
+     */
+    public void addTime(Phase phase, long startTime) {
+        times[phase.ordinal()].add(System.nanoTime() - startTime);
+    }
+
+    public long getTime(Phase phase) {
+        return times[phase.ordinal()].sum();
+    }
+
+    /**
+     * Start counting bytes allocated by the current thread for the generation.
+     * The counting inside another counting of the same thread is ignored, so bytes are counted once.
+     *
+     * @return value for the stopAllocation method
+     */
+    public long startAllocation() {
+        return allocationDepth.get()[0]++ == 0 ? getAllocatedBytes() : -1;
+    }
+
+    /**
+     * Add bytes allocated by the current thread since the start of the counting
+     *
+     * @param start value returned by the startAllocation method
+     */
+    public void stopAllocation(long start) {
+        allocationDepth.get()[0]--;
+        if (start >= 0) {
+            allocated.add(Math.max(getAllocatedBytes() - start, 0));
+        }
+    }
+
+    /**
+     * Set the rank correlation of the surrogate fitness and RMSD values of chromosomes which are sampled for the evaluation by both of them.
+     * Islands set it one after another, so the value of the last island is kept.
+     *
+     * @param agreement Spearman's rank correlation, or NaN if it can't be calculated
+     */
+    public void setSurrogateAgreement(double agreement) {
+        surrogateAgreement = agreement;
+    }
+
+    public double getSurrogateAgreement() {
+        return surrogateAgreement;
+    }
+
+    /**
+     * Finish collecting the statistics and commit the Flight Recorder event
+     *
+     * @param generation number of the generation
+     * @param RMSD       RMSD value of the best chromosome of the generation
+     */
+    public void finish(int generation, double RMSD) {
+        allocatedBytes = allocated.sum();
+        gcCount = getGcCount() - startGcCount;
+        gcTime = getGcTime() - startGcTime;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = generation;
+            event.RMSD = RMSD;
+            event.population = getTime(Phase.POPULATION);
+            event.surrogate = getTime(Phase.SURROGATE);
+            event.rendering = getTime(Phase.RENDERING);
+            event.fitness = getTime(Phase.FITNESS);
+            event.selection = getTime(Phase.SELECTION);
+            event.crossover = getTime(Phase.CROSSOVER);
+            event.output = getTime(Phase.OUTPUT);
+            event.allocatedBytes = allocatedBytes;
+            event.gcCount = gcCount;
+            event.gcTime = gcTime;
+            event.surrogateAgreement = surrogateAgreement;
+            event.commit();
+        }
+    }
+
+    /**
+     * Get the line of the CSV file with the statistics, the header is CSV_HEADER.
+     * The agreement of the surrogate is empty if there is no surrogate.
+     *
+     * @param generation number of the generation
+     * @param RMSD       RMSD value of the best chromosome of the generation
+     * @param time       time of the algorithm in nanoseconds
+     */
+    public String toCSV(int generation, double RMSD, long time) {
+        StringBuilder line = new StringBuilder();
+        line.append(generation).append(',').append(RMSD).append(',').append(time);
+        for (Phase phase : Phase.values()) {
+            line.append(',').append(getTime(phase));
+        }
+        line.append(',').append(allocatedBytes).append(',').append(gcCount).append(',').append(gcTime);
+        line.append(',');
+        if (!Double.isNaN(surrogateAgreement)) {
+            line.append(surrogateAgreement);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread since its start,
+     * or 0 if the virtual machine doesn't support it
+     */
+    private static long getAllocatedBytes() {
+        return allocationCounter != null ? Math.max(allocationCounter.getCurrentThreadAllocatedBytes(), 0) : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        return allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled() ? allocation : null;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(collector.getCollectionTime(), 0);
+        }
+        return time;
+    }
+}
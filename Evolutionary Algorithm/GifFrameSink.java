@@ -0,0 +1,89 @@
+import javax.imageio.*;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Appends images as frames of the single animated .gif file.
+ * Each frame is encoded and written as soon as it is given,
+ * so only the current frame is kept in memory.
+ */
+public class GifFrameSink implements FrameSink {
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    private final ImageWriter writer;
+    private final ImageOutputStream output;
+    private final int delay;
+    private boolean firstFrame = true;
+
+    /**
+     * @param filePath path of the .gif file
+     * @param delay    time between frames in hundredths of a second
+     */
+    GifFrameSink(String filePath, int delay) throws IOException {
+        this.writer = ImageIO.getImageWritersByFormatName("gif").next();
+        this.delay = delay;
+
+        File file = new File(filePath);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("File " + filePath + " can't be replaced");
+        }
+        this.output = ImageIO.createImageOutputStream(file);
+        writer.setOutput(output);
+        writer.prepareWriteSequence(null);
+    }
+
+    @Override
+    public void write(int generation, BufferedImage image) throws IOException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+        IIOMetadataNode control = getNode(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+
+        // The first frame contains the extension which makes the animation looped
+        if (firstFrame) {
+            IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+            extension.setAttribute("applicationID", "NETSCAPE");
+            extension.setAttribute("authenticationCode", "2.0");
+            extension.setUserObject(new byte[]{1, 0, 0});
+            getNode(root, "ApplicationExtensions").appendChild(extension);
+            firstFrame = false;
+        }
+
+        metadata.setFromTree(METADATA_FORMAT, root);
+        writer.writeToSequence(new IIOImage(image, null, metadata), param);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    /**
+     * Get the child node with the given name, or create it
+     */
+    private static IIOMetadataNode getNode(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equalsIgnoreCase(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+}
@@ -0,0 +1,377 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Several independent lineages (islands) of the algorithm.
+ * Each island runs generations in its own thread, so the search doesn't go through the single chromosome.
+ * <p>
+ * Islands don't wait for each other between migrations.
+ * Every migration period islands and the thread of the algorithm meet at the phaser,
+ * and the last of them exchanges the best chromosomes of islands by the ring:
+ * each island combines the chromosome of the previous island with its own
+ * by selecting the best block of them, as the crossover does.
+ * All islands take migrants of the same generation, so the run doesn't depend on the speed of threads.
+ * <p>
+ * After each generation the island puts its chromosome and random numbers into the results of this generation,
+ * and the thread of the algorithm takes the best of them when all islands complete the generation.
+ * Results are kept in the ring of generations up to the next migration,
+ * islands can't run further before the thread of the algorithm comes to the migration,
+ * so the ring is never overwritten before it is taken.
+ * Random numbers of islands are kept for the checkpoint,
+ * so the restarted run continues exactly as the run without the restart.
+ * <p>
+ * Chromosomes are shared between threads only after they are evaluated and composed by the crossover,
+ * such chromosomes don't change anymore.
+ */
+public class IslandModel {
+    // How often the waiting thread of the algorithm checks whether islands are failed, in milliseconds
+    private static final long WAIT_PERIOD = 100;
+
+    private final Parameters parameters;
+    private final BufferedImage sourceImage;
+    private final Metric metric;
+    private final Surrogate surrogate;
+    private final ForkJoinPool pool;
+    private final int migrationPeriod;
+
+    // Chromosome and random numbers of each island after its last generation, islands change only their own ones
+    private final Chromosome[] chromosomes;
+    private final RandomSource[] randoms;
+    // Results of generations which are not taken yet, the generation g is kept at the index g % length
+    private final AtomicReferenceArray<GenerationResults> results;
+    // Islands and the thread of the algorithm wait for each other here at generations of migrations
+    private final Phaser migrations;
+    // Error of the island thread which stops the algorithm
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    // Whether islands are asked to stop before the last generation
+    private volatile boolean stopped;
+    // Generation of the next migration, it is changed by the last thread which comes to the phaser
+    private int nextMigration;
+
+    // Fields below are used by the thread of the algorithm only
+    // Results of the last taken generation
+    private GenerationStatistics completedStatistics;
+    private Chromosome bestChromosome;
+    private double[] islandRMSDs;
+    private Chromosome[] completedChromosomes;
+    private RandomSource[] completedRandoms;
+
+    private final Thread[] threads;
+
+    /**
+     * Start islands with generators split from random numbers of the algorithm
+     *
+     * @param parameters      parameters of the algorithm
+     * @param metric          metric with the original image
+     * @param surrogate       approximate fitness which is shared by islands, or null
+     * @param pool            threads for the evaluation of populations which are shared by islands,
+     *                        or null to evaluate them in threads of islands
+     * @param random          source of random numbers of the algorithm
+     * @param chromosome      chromosome to continue from,
+     *                        or null to start each island from its own random chromosome
+     * @param firstGeneration number of the already completed generations
+     */
+    IslandModel(Parameters parameters, Metric metric, Surrogate surrogate, ForkJoinPool pool, RandomSource random,
+                Chromosome chromosome, int firstGeneration) {
+        this(parameters, metric, surrogate, pool, splitRandoms(random, parameters.getAmountOfIslands()),
+                fillChromosomes(chromosome, parameters.getAmountOfIslands()), firstGeneration);
+    }
+
+    /**
+     * Start islands from their own states, for example from the checkpoint
+     *
+     * @param parameters      parameters of the algorithm
+     * @param metric          metric with the original image
+     * @param surrogate       approximate fitness which is shared by islands, or null
+     * @param pool            threads for the evaluation of populations which are shared by islands,
+     *                        or null to evaluate them in threads of islands
+     * @param randoms         source of random numbers of each island
+     * @param chromosomes     chromosome of each island to continue from,
+     *                        or null to start the island from the random chromosome
+     * @param firstGeneration number of the already completed generations
+     */
+    IslandModel(Parameters parameters, Metric metric, Surrogate surrogate, ForkJoinPool pool, RandomSource[] randoms,
+                Chromosome[] chromosomes, int firstGeneration) {
+        this.parameters = parameters;
+        this.sourceImage = metric.getSourceImage();
+        this.metric = metric;
+        this.surrogate = surrogate;
+        this.pool = pool;
+        this.migrationPeriod = parameters.getMigrationPeriod();
+        this.nextMigration = (firstGeneration / migrationPeriod + 1) * migrationPeriod;
+
+        int amountOfIslands = randoms.length;
+        this.randoms = randoms.clone();
+        this.chromosomes = new Chromosome[amountOfIslands];
+
+        // Islands run at most up to the next migration before their results are taken
+        int amountOfResults = Math.min(migrationPeriod, Math.max(parameters.getAmountOfGenerations() - firstGeneration, 0)) + 1;
+        results = new AtomicReferenceArray<>(amountOfResults);
+        for (int generation = firstGeneration + 1; generation <= firstGeneration + amountOfResults; generation++) {
+            results.set(generation % amountOfResults, new GenerationResults(generation, amountOfIslands));
+        }
+        migrations = new Phaser(amountOfIslands + 1) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                return !migrate();
+            }
+        };
+
+        int[] colorPalette = Calculation.getColorPalette();
+        threads = new Thread[amountOfIslands];
+        for (int i = 0; i < amountOfIslands; i++) {
+            int island = i;
+            this.chromosomes[i] = chromosomes[i] != null ? chromosomes[i] : new Chromosome(parameters.getBlockNumbersY(),
+                    parameters.getBlockNumbersX(), parameters.getBlockSizeY(), parameters.getBlockSizeX(), randoms[i]);
+            threads[i] = new Thread(() -> {
+                Calculation.setColorPalette(colorPalette);
+                try {
+                    runIsland(island, firstGeneration);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }, "island-" + i);
+            threads[i].setDaemon(true);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Wait until all islands complete the generation and take its results.
+     * Generations are taken in order, islands don't pass the next migration until it is taken.
+     * If an island fails before or while the thread waits, its error is thrown.
+     *
+     * @param generation number of the generation
+     * @return best chromosome of all islands in this generation
+     */
+    public Chromosome awaitGeneration(int generation) {
+        // The island could fail while the thread of the algorithm was not waiting, for example while it wrote the output
+        checkFailure();
+        if (stopped) {
+            throw new IllegalStateException("Islands are stopped");
+        }
+
+        int index = generation % results.length();
+        GenerationResults generationResults = results.get(index);
+        if (generationResults.generation != generation) {
+            throw new IllegalStateException("Islands keep generation " + generationResults.generation + " instead of " + generation);
+        }
+
+        try {
+            if (generation % migrationPeriod == 0) {
+                // Islands exchange migrants when all parties come
+                int phase = migrations.arrive();
+                while (phase >= 0) {
+                    try {
+                        phase = migrations.awaitAdvanceInterruptibly(phase, WAIT_PERIOD, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        checkFailure();
+                    }
+                }
+                if (phase < 0) {
+                    checkFailure();
+                    throw new IllegalStateException("Islands are stopped");
+                }
+            } else {
+                while (!generationResults.completed.await(WAIT_PERIOD, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for islands is interrupted", e);
+        }
+
+        // Islands reach the generation which uses this place only after the next migration
+        results.set(index, new GenerationResults(generation + results.length(), chromosomes.length));
+
+        int amountOfIslands = chromosomes.length;
+        completedChromosomes = new Chromosome[amountOfIslands];
+        islandRMSDs = new double[amountOfIslands];
+        for (int i = 0; i < amountOfIslands; i++) {
+            completedChromosomes[i] = generationResults.chromosomes.get(i);
+            islandRMSDs[i] = completedChromosomes[i].getRMSD();
+        }
+        bestChromosome = completedChromosomes[0];
+        for (Chromosome chromosome : completedChromosomes) {
+            if (chromosome.getRMSD() < bestChromosome.getRMSD()) {
+                bestChromosome = chromosome;
+            }
+        }
+        completedRandoms = generationResults.randoms;
+        completedStatistics = generationResults.statistics;
+        return bestChromosome;
+    }
+
+    /**
+     * Get RMSD values of the best chromosomes of islands in the last taken generation
+     */
+    public double[] getIslandRMSDs() {
+        return islandRMSDs;
+    }
+
+    /**
+     * Get chromosomes of islands after the last taken generation, islands continue from them
+     */
+    public Chromosome[] getIslandChromosomes() {
+        return completedChromosomes;
+    }
+
+    /**
+     * Get random numbers of islands after the last taken generation, islands continue from them
+     */
+    public RandomSource[] getIslandRandoms() {
+        return completedRandoms;
+    }
+
+    /**
+     * Get statistics of the last taken generation, they contain the total time of phases of all islands
+     */
+    public GenerationStatistics getStatistics() {
+        return completedStatistics;
+    }
+
+    /**
+     * Ask islands to stop, islands which wait for the migration stop at once
+     */
+    public void stop() {
+        stopped = true;
+        migrations.forceTermination();
+    }
+
+    /**
+     * Run generations of the single island
+     *
+     * @param island          index of the island
+     * @param firstGeneration number of the already completed generations
+     */
+    private void runIsland(int island, int firstGeneration) {
+        Evaluator evaluator = new LocalEvaluator(pool, metric, parameters.isTiledEvaluation());
+        BlockSampler sampler = null;
+        if (parameters.isErrorGuidedMutation()) {
+            sampler = new BlockSampler(parameters.getBlockNumbersY() * parameters.getBlockNumbersX(), parameters.getExplorationFloor(),
+                    parameters.getMetric());
+        }
+
+        for (int generation = firstGeneration + 1; generation <= parameters.getAmountOfGenerations(); generation++) {
+            // Other island is failed or the algorithm is stopped
+            if (stopped) {
+                return;
+            }
+
+            // Islands generate their populations in their own threads and evaluate them in the shared pool
+            GenerationResults generationResults = results.get(generation % results.length());
+            GenerationStatistics statistics = generationResults.statistics;
+            long allocation = statistics.startAllocation();
+            try {
+                chromosomes[island] = Evolution.nextGeneration(chromosomes[island], parameters.getAmountOfPopulations(), parameters.getAmountOfSiblings(),
+                        parameters.getAmountOfBestDescendants(), parameters.getColoring(), sampler, randoms[island], sourceImage, evaluator, surrogate, parameters.getSelectionBatchSize(),
+                        statistics);
+            } finally {
+                statistics.stopAllocation(allocation);
+            }
+
+            // The island changes its generator in the next generation, so the copy is kept
+            generationResults.chromosomes.set(island, chromosomes[island]);
+            generationResults.randoms[island] = randoms[island].copy();
+            if (generation % migrationPeriod == 0) {
+                if (migrations.arriveAndAwaitAdvance() < 0) {
+                    return;
+                }
+            } else {
+                generationResults.completed.countDown();
+            }
+        }
+    }
+
+    /**
+     * Exchange chromosomes of islands at the generation of the migration.
+     * It is run by the last thread which comes to the phaser, while other threads wait.
+     *
+     * @return whether the migration is completed
+     */
+    private boolean migrate() {
+        int generation = nextMigration;
+        nextMigration += migrationPeriod;
+        GenerationResults generationResults = results.get(generation % results.length());
+        long allocation = generationResults.statistics.startAllocation();
+        try {
+            // Each island takes the chromosome of the previous one
+            int amountOfIslands = chromosomes.length;
+            Chromosome[] migrants = chromosomes.clone();
+            for (int i = 0; i < amountOfIslands; i++) {
+                chromosomes[i] = Evolution.merge(chromosomes[i], migrants[(i + amountOfIslands - 1) % amountOfIslands]);
+                generationResults.chromosomes.set(i, chromosomes[i]);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            fail(e);
+            return false;
+        } finally {
+            generationResults.statistics.stopAllocation(allocation);
+        }
+    }
+
+    /**
+     * Keep the error of the island and stop other islands
+     */
+    private void fail(RuntimeException e) {
+        failure.compareAndSet(null, e);
+        stopped = true;
+        migrations.forceTermination();
+    }
+
+    /**
+     * Throw the error of the island if islands are failed
+     */
+    private void checkFailure() {
+        RuntimeException error = failure.get();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static RandomSource[] splitRandoms(RandomSource random, int amountOfIslands) {
+        RandomSource[] randoms = new RandomSource[amountOfIslands];
+        for (int i = 0; i < amountOfIslands; i++) {
+            randoms[i] = random.split();
+        }
+        return randoms;
+    }
+
+    private static Chromosome[] fillChromosomes(Chromosome chromosome, int amountOfIslands) {
+        Chromosome[] chromosomes = new Chromosome[amountOfIslands];
+        Arrays.fill(chromosomes, chromosome);
+        return chromosomes;
+    }
+
+    /**
+     * Chromosomes and random numbers of islands after one generation and the statistics of this generation.
+     * Each island sets its own elements, the latch is released when all islands set them.
+     * At generations of migrations islands wait for the phaser instead of the latch.
+     */
+    private static class GenerationResults {
+        final int generation;
+        final AtomicReferenceArray<Chromosome> chromosomes;
+        final RandomSource[] randoms;
+        final CountDownLatch completed;
+        final GenerationStatistics statistics = new GenerationStatistics();
+
+        GenerationResults(int generation, int amountOfIslands) {
+            this.generation = generation;
+            chromosomes = new AtomicReferenceArray<>(amountOfIslands);
+            randoms = new RandomSource[amountOfIslands];
+            completed = new CountDownLatch(amountOfIslands);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes each image to the separate .jpg file
+ */
+public class JpegFrameSink implements FrameSink {
+    private final String outputPath;
+
+    /**
+     * @param outputPath path of images without the number of the generation and the extension
+     */
+    JpegFrameSink(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    @Override
+    public void write(int generation, BufferedImage image) throws IOException {
+        String filePath = outputPath + generation + ".jpg";
+        if (!ImageIO.write(image, "jpg", new File(filePath))) {
+            throw new IOException("There is no writer for .jpg files");
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
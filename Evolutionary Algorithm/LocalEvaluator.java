@@ -0,0 +1,78 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Evaluates chromosomes in the current process.
+ * Mutated chromosomes compare only the block of the mutated gene.
+ * The tiled evaluator doesn't draw images, it compares blocks drawn on buffers of threads.
+ */
+public class LocalEvaluator implements Evaluator {
+    private final ForkJoinPool pool;
+    private final Metric metric;
+    private final boolean tiled;
+
+    /**
+     * @param pool   threads for the evaluation, or null to evaluate in the current thread
+     * @param metric metric which compares chromosomes with the source image
+     * @param tiled  whether chromosomes are evaluated without their images
+     */
+    LocalEvaluator(ForkJoinPool pool, Metric metric, boolean tiled) {
+        this.pool = pool;
+        this.metric = metric;
+        this.tiled = tiled;
+    }
+
+    /**
+     * Calculate images and RMSD values of chromosomes.
+     * The time of rendering and fitness is the total time of all threads.
+     */
+    @Override
+    public void evaluate(ArrayList<Chromosome> chromosomes, BufferedImage sourceImage, GenerationStatistics statistics) {
+        if (pool == null) {
+            for (Chromosome chromosome : chromosomes) {
+                evaluate(chromosome, sourceImage, statistics);
+            }
+        } else {
+            pool.submit(() -> chromosomes.parallelStream().forEach(chromosome -> evaluate(chromosome, sourceImage, statistics))).join();
+        }
+    }
+
+    @Override
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    /**
+     * Calculate the RMSD value of the chromosome with its image or by tiles.
+     * Drawing of tiles is a part of the fitness time.
+     * Threads of the pool count their allocations for the generation.
+     */
+    private void evaluate(Chromosome chromosome, BufferedImage sourceImage, GenerationStatistics statistics) {
+        long allocation = statistics.startAllocation();
+        try {
+            if (tiled) {
+                long startTime = System.nanoTime();
+                chromosome.calculateRMSDByTiles(metric);
+                statistics.addTime(GenerationStatistics.Phase.FITNESS, startTime);
+            } else {
+                evaluate(chromosome, sourceImage, metric, statistics);
+            }
+        } finally {
+            statistics.stopAllocation(allocation);
+        }
+    }
+
+    /**
+     * Calculate the image and the RMSD value of the chromosome
+     */
+    static void evaluate(Chromosome chromosome, BufferedImage sourceImage, Metric metric, GenerationStatistics statistics) {
+        long startTime = System.nanoTime();
+        chromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+        statistics.addTime(GenerationStatistics.Phase.RENDERING, startTime);
+
+        startTime = System.nanoTime();
+        chromosome.calculateRMSD(metric);
+        statistics.addTime(GenerationStatistics.Phase.FITNESS, startTime);
+    }
+}
@@ -1,9 +1,4 @@
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Roman Soldatov BS19-02
@@ -15,137 +10,133 @@ public class Main {
      */
     // Image name without extension
     // Supports only .jpg images
-    private static final String inputImageName = "image";
+    static final String inputImageName = "image";
     // Number of different chromosomes with one mutated gene
-    private static final int amountOfPopulations = 250;
+    static final int amountOfPopulations = 250;
     // Number of chromosomes with common mutated gene,
     // but which is different in terms of other parameters
-    private static final int amountOfSiblings = 4;
+    static final int amountOfSiblings = 4;
+    // The way to color paths of mutated genes: "random" colors of siblings,
+    // "optimal" average colors of the source image under paths without siblings,
+    // or "palette" the nearest colors of the palette to the average colors
+    static final String coloring = "random";
+    // Fitness function which compares images with the source image:
+    // "rmsd" Root Mean Square Deviation of colors, "ssim" structural similarity of brightness in windows,
+    // or "delta_e" distance between colors in the CIELAB color space.
+    // The difference is RMSD, 100 * (1 - SSIM) or the average Delta E, the less the better
+    static final String metric = "rmsd";
     // Number of best chromosomes for the selection
-    private static final int amountOfBestDescendants = 100;
+    static final int amountOfBestDescendants = 100;
+    // Whether mutated blocks are chosen in proportion to their errors instead of uniformly
+    static final boolean errorGuidedMutation = false;
+    // Probability to choose the mutated block uniformly when mutations are guided by errors
+    static final double explorationFloor = 0.1;
     // Number of generations
-    private static final int amountOfGenerations = 500;
-
-    private static final int blockNumbersY = 16;
-    private static final int blockNumbersX = 16;
-    private static final int blockSizeY = 8;
-    private static final int blockSizeX = 8;
+    static final int amountOfGenerations = 500;
+    // Conditions to stop the algorithm before the last generation, 0 means the condition is not checked.
+    // The difference (RMSD) which is enough
+    static final double targetRMSD = 0;
+    // Number of generations during which the difference must be improved by more than plateauEpsilon
+    static final int plateauGenerations = 0;
+    static final double plateauEpsilon = 0.01;
+    // Time of the algorithm in seconds
+    static final long timeLimit = 0;
+    // Number of colors which represent the source image.
+    // If it is 0, all colors of the source image are used
+    static final int paletteSize = 64;
+    // Number of threads which evaluate the population.
+    // If it is 1, the population is evaluated in the main thread.
+    // In the batch mode these threads are shared by all images
+    static final int amountOfThreads = Runtime.getRuntime().availableProcessors();
+    // Number of chromosomes which are evaluated at once before the selection
+    // keeps only the best of them. It bounds the memory for the population.
+    // If it is 0, the whole population is evaluated at once
+    static final int selectionBatchSize = 256;
+    // Part of mutated chromosomes which are evaluated at the full resolution.
+    // Other chromosomes are dropped after the fast estimation at the resolution of maze cells.
+    // It should keep more chromosomes than amountOfBestDescendants.
+    // If it is 0, all chromosomes are evaluated at the full resolution
+    static final double surrogateFraction = 0;
+    // Each mutated chromosome with this period is also evaluated at the full resolution, even if it is dropped,
+    // and the agreement of the surrogate in the statistics is measured on these chromosomes
+    static final int surrogateSamplePeriod = 16;
+    // Whether chromosomes are evaluated block by block without their images.
+    // Blocks are compared by strips, so the memory doesn't grow with the image size,
+    // and only the best chromosome of the generation is drawn for the output
+    static final boolean tiledEvaluation = false;
+    // Format of saved images: "jpg" saves each image to the separate file,
+    // "gif" appends them to the animation, "raw" writes them to the single file of raw frames
+    static final String outputFormat = "jpg";
+    // Time between frames of the animation in hundredths of a second
+    static final int animationFrameDelay = 10;
+    // Number of generations between saved images
+    static final int outputPeriod = 1;
+    // Whether to save only images which are better than the previous saved one
+    static final boolean outputOnlyImprovements = false;
+    // Number of images waiting to be written in the background.
+    // If there are too many images, the next ones are skipped, lines of statistics are never skipped
+    static final int outputQueueSize = 16;
+    // Number of generations between saving checkpoints.
+    // Run the program with the --resume argument to continue from the last checkpoint
+    static final int checkpointPeriod = 10;
+    // Number of independent lineages which run in their own threads.
+    // If it is 1, there is the single lineage which uses all threads for the evaluation
+    static final int amountOfIslands = 1;
+    // Number of generations between exchanges of best chromosomes of islands
+    static final int migrationPeriod = 10;
+    // Addresses of worker processes which evaluate populations, separated by commas,
+    // for example "localhost:5001,localhost:5002". Run them by "java Worker <port>".
+    // If it is empty, populations are evaluated by threads of this program
+    static final String workers = "";
+    // Number of chromosomes which are sent to the worker at once
+    static final int remoteBatchSize = 64;
+
+    // Seed of random numbers. Runs with the same seed produce the same images.
+    // It is used only if fixedSeed is true, otherwise the seed is taken from the current time and printed.
+    // It can be set by the --seed <number> argument, which also makes it fixed, so any number including 0 is the seed
+    static final boolean fixedSeed = false;
+    static final long seed = 0;
+
+    static final int blockNumbersY = 16;
+    static final int blockNumbersX = 16;
+    static final int blockSizeY = 8;
+    static final int blockSizeX = 8;
 
     private static final String inputPath = inputImageName + ".jpg";
-    private static final String statisticsPath = "statistics/" + inputImageName + "_statistics.txt";
-    private static final String outputPath = "output/" + inputImageName + "/generation_";
 
     public static void main(String[] args) {
-        // Prepare necessary files for the algorithm:
-        // create folders and files
-        createFolders();
-        BufferedImage sourceImage = readSourceImage();
-        PrintWriter statisticsFile = createStatisticsFile();
-
-        // Start the algorithm itself
-        startEvolutionaryAlgorithm(sourceImage, statisticsFile);
-
-        statisticsFile.close();
-    }
-
-    /**
-     * Evolutionary algorithm for generating an image with respect to the source image
-     *
-     * @param sourceImage    reference image
-     * @param statisticsFile - file for writing the stats
-     */
-    private static void startEvolutionaryAlgorithm(BufferedImage sourceImage, PrintWriter statisticsFile) {
-        // Start timer
-        long startTime = System.nanoTime();
-
-        // Calculate main colors which are used in the source image
-        Calculation.calculateColorPalette(sourceImage);
-
-        // Create the blank chromosome
-        Chromosome chromosome = new Chromosome(blockNumbersY, blockNumbersX, blockSizeY, blockSizeX);
-
-        // Create generations
-        for (int i = 0; i < amountOfGenerations; i++) {
-            // Create new population for the next generation
-            chromosome = Evolution.nextGeneration(chromosome, amountOfPopulations, amountOfSiblings, amountOfBestDescendants, sourceImage);
-
-            // Save the result: the best chromosome of the new generation
-            BufferedImage image = chromosome.getImage();
-            saveImage(image, outputPath + (i + 1) + ".jpg");
-
-            // Get time
-            long currentTime = System.nanoTime();
-
-            // Save intermediate results
-            String result = "Generation: " + (i + 1) + "; Difference: " + chromosome.getRMSD() + "; Time: " + (currentTime - startTime) + ";";
-            System.out.println(result);
-            statisticsFile.println(result);
-            statisticsFile.flush();
+        Parameters parameters = new Parameters(inputImageName, inputPath);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--resume")) {
+                // Continue the algorithm from the last checkpoint if it's asked
+                parameters.set("resume", "true");
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                try {
+                    parameters.set("seed", args[++i]);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+            } else {
+                System.out.println("Usage: java Main [--resume] [--seed <number>]");
+                return;
+            }
         }
-    }
-
-    /**
-     * Save image by giving the path
-     *
-     * @param image    - image to save
-     * @param filePath - path where to save
-     */
-    private static void saveImage(BufferedImage image, String filePath) {
-        File output = new File(filePath);
         try {
-            ImageIO.write(image, "jpg", output);
-        } catch (IOException e) {
-            System.out.println("File " + filePath + "doesn't exist!");
+            parameters.validate();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
         }
-    }
 
-    /**
-     * Create necessary folders for the algorithm, if they don't exist
-     */
-    private static void createFolders() {
-        File file = new File("output/");
-        if (!file.exists()) {
-            file.mkdir();
-        }
-        file = new File("output/" + inputImageName + "/");
-        if (!file.exists()) {
-            file.mkdir();
-        }
+        // Threads for the evaluation of populations
+        ForkJoinPool pool = amountOfThreads > 1 ? new ForkJoinPool(amountOfThreads) : null;
 
-        file = new File("statistics/");
-        if (!file.exists()) {
-            file.mkdir();
-        }
-    }
-
-    /**
-     * Read input image file
-     *
-     * @return BufferedImage object
-     */
-    private static BufferedImage readSourceImage() {
-        BufferedImage sourceImage = null;
-        File file = new File(inputPath);
-        try {
-            sourceImage = ImageIO.read(file);
-        } catch (IOException e) {
-            System.out.println("File " + inputPath + " doesn't exist!");
-        }
-        return sourceImage;
-    }
+        // Start the algorithm itself
+        new EvolutionaryAlgorithm(parameters, pool, false).run();
 
-    /**
-     * Create file to write the statistics (intermediate results)
-     *
-     * @return reference to the file
-     */
-    private static PrintWriter createStatisticsFile() {
-        PrintWriter statisticsFile = null;
-        try {
-            statisticsFile = new PrintWriter(statisticsPath);
-        } catch (FileNotFoundException e) {
-            System.out.println("File " + statisticsPath + " doesn't exist!");
+        if (pool != null) {
+            pool.shutdown();
         }
-        return statisticsFile;
     }
-}
\ No newline at end of file
+}
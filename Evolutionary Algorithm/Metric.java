@@ -0,0 +1,73 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Fitness function which compares images with the source image.
+ * <p>
+ * The error of the image is the sum of errors of its areas (blocks of genes),
+ * and the error of each area depends only on pixels of this area.
+ * So mutated chromosomes are evaluated by one block, and the crossover selects the best blocks by their errors.
+ * Less error means more similar images.
+ * <p>
+ * The metric is created for the particular source image and keeps the data which is calculated from it once.
+ * It doesn't change after that, so it is shared by all threads.
+ */
+public interface Metric {
+
+    /**
+     * Kinds of metrics, they are set by their names in lower case
+     */
+    enum Kind {
+        // Root Mean Square Deviation of color components
+        RMSD,
+        // Structural similarity of brightness in small windows
+        SSIM,
+        // Distance between colors in the CIELAB color space
+        DELTA_E;
+
+        /**
+         * Create the metric of this kind for the source image
+         */
+        public Metric create(BufferedImage sourceImage) {
+            switch (this) {
+                case SSIM:
+                    return new SSIMMetric(sourceImage);
+                case DELTA_E:
+                    return new DeltaEMetric(sourceImage);
+                default:
+                    return new RMSDMetric(sourceImage);
+            }
+        }
+    }
+
+    Kind getKind();
+
+    BufferedImage getSourceImage();
+
+    /**
+     * Whether the error of the area is the sum of errors of its rows,
+     * so the area can be compared by horizontal strips
+     */
+    boolean isSeparable();
+
+    /**
+     * Calculate the error of the area of the image against the same area of the source image
+     *
+     * @param pixels     packed RGB pixels which contain the area
+     * @param offset     index of the top left pixel of the area in the pixels
+     * @param width      width of the row of the pixels
+     * @param startY     y coordinate of the area on the source image
+     * @param startX     x coordinate of the area on the source image
+     * @param areaWidth  width of the area
+     * @param areaHeight height of the area
+     * @return error of the area, it is added to errors of other areas
+     */
+    double calculateError(int[] pixels, int offset, int width, int startY, int startX, int areaWidth, int areaHeight);
+
+    /**
+     * Get the difference of the whole image which is shown to the user,
+     * for example RMSD instead of the sum of squared errors
+     *
+     * @param error sum of errors of all areas of the image
+     */
+    double getDifference(double error);
+}
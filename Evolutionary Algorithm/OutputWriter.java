@@ -0,0 +1,162 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Writes images and statistics of generations in the background thread,
+ * so encoding and writing files don't stop the algorithm.
+ * <p>
+ * Tasks are passed through the queue in the order of generations.
+ * Only the number of images waiting in the queue is bounded:
+ * if there are too many of them, the image of the generation is skipped instead of waiting.
+ * Lines of the statistics are small, so they and the image of the last generation are always queued,
+ * and the algorithm never waits for the output.
+ * The image is asked only when it is going to be written, so skipped images are not drawn at all.
+ * Images of chromosomes are never modified after they are calculated,
+ * so the given image is the snapshot of the generation and it isn't copied.
+ */
+public class OutputWriter {
+    // Task which stops the thread
+    private static final Runnable STOP = () -> {
+    };
+
+    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    // Free places for images in the queue, the writer returns the place when the image is saved
+    private final Semaphore imagePlaces;
+    private final Thread thread;
+    private final PrintWriter statisticsFile;
+    private final FrameSink frameSink;
+    private final int period;
+    private final boolean onlyImprovements;
+
+    // Fields used only by the thread of the algorithm
+    private double bestRMSD = Double.MAX_VALUE;
+    private int skippedImages;
+
+    /**
+     * @param statisticsFile   file for writing the stats
+     * @param frameSink        destination of images, it's used only by the background thread
+     * @param queueSize        maximal number of images waiting for the writing
+     * @param period           number of generations between saved images
+     * @param onlyImprovements whether to save only images which are better than the previous saved one
+     */
+    OutputWriter(PrintWriter statisticsFile, FrameSink frameSink, int queueSize, int period, boolean onlyImprovements) {
+        this.statisticsFile = statisticsFile;
+        this.frameSink = frameSink;
+        this.period = period;
+        this.onlyImprovements = onlyImprovements;
+        this.imagePlaces = new Semaphore(queueSize);
+        this.thread = new Thread(this::run, "output-writer");
+        this.thread.start();
+    }
+
+    /**
+     * Write the image of the generation if it is not skipped
+     *
+     * @param generation number of the generation
+     * @param image      drawing of the image of the best chromosome of the generation,
+     *                   it is called in the current thread only if the image is written
+     * @param RMSD       RMSD value of the best chromosome
+     * @param last       whether it is the last generation, its image is always saved
+     */
+    public void writeImage(int generation, Supplier<BufferedImage> image, double RMSD, boolean last) {
+        boolean periodic = generation % period == 0 && (!onlyImprovements || RMSD < bestRMSD);
+        if (last) {
+            BufferedImage lastImage = image.get();
+            tasks.add(() -> saveImage(generation, lastImage));
+        } else if (periodic) {
+            if (imagePlaces.tryAcquire()) {
+                BufferedImage periodicImage = image.get();
+                tasks.add(() -> {
+                    try {
+                        saveImage(generation, periodicImage);
+                    } finally {
+                        imagePlaces.release();
+                    }
+                });
+                bestRMSD = Math.min(bestRMSD, RMSD);
+            } else {
+                skippedImages++;
+            }
+        }
+    }
+
+    /**
+     * Write the line of the statistics file, it is never skipped and never waits
+     */
+    public void writeStatistics(String statistics) {
+        tasks.add(() -> statisticsFile.println(statistics));
+    }
+
+    /**
+     * Wait until all tasks are written, close the frame sink and stop the thread.
+     * The thread is stopped even if the current thread is interrupted.
+     * The statistics file is not closed.
+     */
+    public void close() {
+        boolean interrupted = false;
+        tasks.add(STOP);
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        statisticsFile.flush();
+
+        if (skippedImages > 0) {
+            System.out.println(skippedImages + " images were skipped because the output was busy");
+        }
+    }
+
+    /**
+     * Execute tasks until the stop task.
+     * The statistics file is flushed when there are no tasks to write.
+     * The failed task doesn't stop the thread, otherwise tasks would be queued forever.
+     */
+    private void run() {
+        try {
+            while (true) {
+                Runnable task = tasks.take();
+                if (task == STOP) {
+                    closeFrameSink();
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("Output can't be written: " + e);
+                }
+                if (tasks.isEmpty()) {
+                    statisticsFile.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void saveImage(int generation, BufferedImage image) {
+        try {
+            frameSink.write(generation, image);
+        } catch (IOException e) {
+            System.out.println("Image of the generation " + generation + " can't be saved: " + e.getMessage());
+        }
+    }
+
+    private void closeFrameSink() {
+        try {
+            frameSink.close();
+        } catch (IOException e) {
+            System.out.println("Output images can't be finished: " + e.getMessage());
+        }
+    }
+}
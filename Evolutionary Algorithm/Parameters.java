@@ -0,0 +1,399 @@
+/**
+ * Parameters of the single run of the algorithm.
+ * By default they are the same as the parameters in the Main class,
+ * so only different values should be set for the particular image.
+ * <p>
+ * Names of parameters are the names of variables in the Main class,
+ * for example amountOfGenerations=1000 or outputFormat=gif.
+ */
+public class Parameters {
+    // Name of the image which is used in names of output files
+    private String inputImageName;
+    private String inputPath;
+    private boolean resume;
+
+    private int amountOfPopulations = Main.amountOfPopulations;
+    private int amountOfSiblings = Main.amountOfSiblings;
+    private int amountOfBestDescendants = Main.amountOfBestDescendants;
+    private Chromosome.Coloring coloring = parseColoring(Main.coloring);
+    private Metric.Kind metric = parseMetric(Main.metric);
+    private boolean errorGuidedMutation = Main.errorGuidedMutation;
+    private double explorationFloor = Main.explorationFloor;
+    private int amountOfGenerations = Main.amountOfGenerations;
+    private double targetRMSD = Main.targetRMSD;
+    private int plateauGenerations = Main.plateauGenerations;
+    private double plateauEpsilon = Main.plateauEpsilon;
+    private long timeLimit = Main.timeLimit;
+    private int paletteSize = Main.paletteSize;
+    private int selectionBatchSize = Main.selectionBatchSize;
+    private double surrogateFraction = Main.surrogateFraction;
+    private int surrogateSamplePeriod = Main.surrogateSamplePeriod;
+    private boolean tiledEvaluation = Main.tiledEvaluation;
+    private String outputFormat = Main.outputFormat;
+    private int animationFrameDelay = Main.animationFrameDelay;
+    private int outputPeriod = Main.outputPeriod;
+    private boolean outputOnlyImprovements = Main.outputOnlyImprovements;
+    private int outputQueueSize = Main.outputQueueSize;
+    private int checkpointPeriod = Main.checkpointPeriod;
+    private int amountOfIslands = Main.amountOfIslands;
+    private int migrationPeriod = Main.migrationPeriod;
+    private String workers = Main.workers;
+    private int remoteBatchSize = Main.remoteBatchSize;
+    private boolean fixedSeed = Main.fixedSeed;
+    private long seed = Main.seed;
+
+    private int blockNumbersY = Main.blockNumbersY;
+    private int blockNumbersX = Main.blockNumbersX;
+    private int blockSizeY = Main.blockSizeY;
+    private int blockSizeX = Main.blockSizeX;
+
+    /**
+     * @param inputImageName name of the image which is used in names of output files
+     * @param inputPath      path of the source image
+     */
+    Parameters(String inputImageName, String inputPath) {
+        this.inputImageName = inputImageName;
+        this.inputPath = inputPath;
+    }
+
+    /**
+     * Set the parameter by its name
+     *
+     * @param name  name of the variable in the Main class, or "resume"
+     * @param value value of the parameter
+     * @throws IllegalArgumentException if there is no such parameter or the value is wrong
+     */
+    public void set(String name, String value) {
+        try {
+            switch (name) {
+                case "inputImageName":
+                    inputImageName = value;
+                    break;
+                case "resume":
+                    resume = parseBoolean(value);
+                    break;
+                case "amountOfPopulations":
+                    amountOfPopulations = parsePositive(value);
+                    break;
+                case "amountOfSiblings":
+                    amountOfSiblings = parsePositive(value);
+                    break;
+                case "coloring":
+                    coloring = parseColoring(value);
+                    break;
+                case "metric":
+                    metric = parseMetric(value);
+                    break;
+                case "amountOfBestDescendants":
+                    amountOfBestDescendants = parsePositive(value);
+                    break;
+                case "errorGuidedMutation":
+                    errorGuidedMutation = parseBoolean(value);
+                    break;
+                case "explorationFloor":
+                    explorationFloor = Math.min(Math.max(Double.parseDouble(value), 0), 1);
+                    break;
+                case "amountOfGenerations":
+                    amountOfGenerations = parsePositive(value);
+                    break;
+                case "targetRMSD":
+                    targetRMSD = Math.max(Double.parseDouble(value), 0);
+                    break;
+                case "plateauGenerations":
+                    plateauGenerations = Math.max(Integer.parseInt(value), 0);
+                    break;
+                case "plateauEpsilon":
+                    plateauEpsilon = Math.max(Double.parseDouble(value), 0);
+                    break;
+                case "timeLimit":
+                    timeLimit = Math.max(Long.parseLong(value), 0);
+                    break;
+                case "paletteSize":
+                    paletteSize = Math.max(Integer.parseInt(value), 0);
+                    break;
+                case "selectionBatchSize":
+                    selectionBatchSize = parseNonNegative(value);
+                    break;
+                case "surrogateFraction":
+                    surrogateFraction = Math.min(Math.max(Double.parseDouble(value), 0), 1);
+                    break;
+                case "surrogateSamplePeriod":
+                    surrogateSamplePeriod = parsePositive(value);
+                    break;
+                case "tiledEvaluation":
+                    tiledEvaluation = parseBoolean(value);
+                    break;
+                case "outputFormat":
+                    outputFormat = value;
+                    break;
+                case "animationFrameDelay":
+                    animationFrameDelay = parsePositive(value);
+                    break;
+                case "outputPeriod":
+                    outputPeriod = parsePositive(value);
+                    break;
+                case "outputOnlyImprovements":
+                    outputOnlyImprovements = parseBoolean(value);
+                    break;
+                case "outputQueueSize":
+                    outputQueueSize = parsePositive(value);
+                    break;
+                case "checkpointPeriod":
+                    checkpointPeriod = parsePositive(value);
+                    break;
+                case "amountOfIslands":
+                    amountOfIslands = parsePositive(value);
+                    break;
+                case "migrationPeriod":
+                    migrationPeriod = parsePositive(value);
+                    break;
+                case "workers":
+                    workers = value;
+                    break;
+                case "remoteBatchSize":
+                    remoteBatchSize = parsePositive(value);
+                    break;
+                case "fixedSeed":
+                    fixedSeed = parseBoolean(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    fixedSeed = true;
+                    break;
+                case "blockNumbersY":
+                    blockNumbersY = parsePositive(value);
+                    break;
+                case "blockNumbersX":
+                    blockNumbersX = parsePositive(value);
+                    break;
+                case "blockSizeY":
+                    blockSizeY = parsePositive(value);
+                    break;
+                case "blockSizeX":
+                    blockSizeX = parsePositive(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong value of the parameter " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Check parameters which depend on each other, it is called after all parameters are set
+     *
+     * @throws IllegalArgumentException if parameters can't be used together
+     */
+    public void validate() {
+        // The surrogate estimates the squared error of colors, for other metrics it drops better chromosomes
+        if (surrogateFraction > 0 && metric != Metric.Kind.RMSD) {
+            throw new IllegalArgumentException("The surrogate fitness estimates RMSD, it can't be used with the metric "
+                    + metric.name().toLowerCase() + ", set surrogateFraction to 0");
+        }
+        // Average colors have the least squared error, but not the least error of other metrics
+        if (coloring != Chromosome.Coloring.RANDOM && metric != Metric.Kind.RMSD) {
+            throw new IllegalArgumentException("The " + coloring.name().toLowerCase() + " coloring minimizes RMSD, "
+                    + "it can't be used with the metric " + metric.name().toLowerCase() + ", set coloring to random");
+        }
+    }
+
+    private static int parsePositive(String value) {
+        int number = Integer.parseInt(value);
+        if (number <= 0) {
+            throw new NumberFormatException(value);
+        }
+        return number;
+    }
+
+    private static int parseNonNegative(String value) {
+        int number = Integer.parseInt(value);
+        if (number < 0) {
+            throw new NumberFormatException(value);
+        }
+        return number;
+    }
+
+    private static Chromosome.Coloring parseColoring(String value) {
+        try {
+            return Chromosome.Coloring.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new NumberFormatException(value);
+        }
+    }
+
+    private static Metric.Kind parseMetric(String value) {
+        try {
+            return Metric.Kind.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new NumberFormatException(value);
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (!value.equals("true") && !value.equals("false")) {
+            throw new NumberFormatException(value);
+        }
+        return value.equals("true");
+    }
+
+    public String getInputImageName() {
+        return inputImageName;
+    }
+
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public int getAmountOfPopulations() {
+        return amountOfPopulations;
+    }
+
+    public int getAmountOfSiblings() {
+        return amountOfSiblings;
+    }
+
+    public Chromosome.Coloring getColoring() {
+        return coloring;
+    }
+
+    public Metric.Kind getMetric() {
+        return metric;
+    }
+
+    public int getAmountOfBestDescendants() {
+        return amountOfBestDescendants;
+    }
+
+    public boolean isErrorGuidedMutation() {
+        return errorGuidedMutation;
+    }
+
+    public double getExplorationFloor() {
+        return explorationFloor;
+    }
+
+    public int getAmountOfGenerations() {
+        return amountOfGenerations;
+    }
+
+    public double getTargetRMSD() {
+        return targetRMSD;
+    }
+
+    public int getPlateauGenerations() {
+        return plateauGenerations;
+    }
+
+    public double getPlateauEpsilon() {
+        return plateauEpsilon;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public int getSelectionBatchSize() {
+        return selectionBatchSize;
+    }
+
+    public double getSurrogateFraction() {
+        return surrogateFraction;
+    }
+
+    public int getSurrogateSamplePeriod() {
+        return surrogateSamplePeriod;
+    }
+
+    public boolean isTiledEvaluation() {
+        return tiledEvaluation;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public int getAnimationFrameDelay() {
+        return animationFrameDelay;
+    }
+
+    public int getOutputPeriod() {
+        return outputPeriod;
+    }
+
+    public boolean isOutputOnlyImprovements() {
+        return outputOnlyImprovements;
+    }
+
+    public int getOutputQueueSize() {
+        return outputQueueSize;
+    }
+
+    public int getCheckpointPeriod() {
+        return checkpointPeriod;
+    }
+
+    public int getAmountOfIslands() {
+        return amountOfIslands;
+    }
+
+    public int getMigrationPeriod() {
+        return migrationPeriod;
+    }
+
+    public String getWorkers() {
+        return workers;
+    }
+
+    public int getRemoteBatchSize() {
+        return remoteBatchSize;
+    }
+
+    public boolean isFixedSeed() {
+        return fixedSeed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getBlockNumbersY() {
+        return blockNumbersY;
+    }
+
+    public int getBlockNumbersX() {
+        return blockNumbersX;
+    }
+
+    public int getBlockSizeY() {
+        return blockSizeY;
+    }
+
+    public int getBlockSizeX() {
+        return blockSizeX;
+    }
+
+    public String getStatisticsPath() {
+        return "statistics/" + inputImageName + "_statistics.csv";
+    }
+
+    public String getOutputFolder() {
+        return "output/" + inputImageName + "/";
+    }
+
+    public String getOutputPath() {
+        return getOutputFolder() + "generation_";
+    }
+
+    public String getCheckpointPath() {
+        return "checkpoints/" + inputImageName + ".checkpoint";
+    }
+}
@@ -1,6 +1,3 @@
-import java.awt.*;
-import java.util.ArrayList;
-
 /**
  * The gene consist of paths, some kind of patterns on the maze.
  * The path consists of cells on the maze.
@@ -8,47 +5,49 @@ import java.util.ArrayList;
  * up, down, left, right
  * <p>
  * All cells of the path have the same color.
+ * The path is immutable, so it can be shared by genes.
  */
 public class Path {
-    private final ArrayList<Cell> path;
-    private Color color;
-
-    public Path(Cell start) {
-        this.path = new ArrayList<>();
-        this.path.add(start);
-    }
-
-    public Path(Color color) {
-        this.path = new ArrayList<>();
+    // Coordinates of cells inside the gene
+    private final int[] pathY;
+    private final int[] pathX;
+    // Packed RGB color
+    private final int color;
+
+    /**
+     * @param pathY y coordinates of cells, the array must not be modified after that
+     * @param pathX x coordinates of cells, the array must not be modified after that
+     * @param color packed RGB color of the path
+     */
+    public Path(int[] pathY, int[] pathX, int color) {
+        this.pathY = pathY;
+        this.pathX = pathX;
         this.color = color;
     }
 
-    public Path(Path path) {
-        this.path = new ArrayList<>();
-        color = path.getColor();
-        for (int i = 0; i < path.size(); i++) {
-            Cell cell = path.get(i);
-            this.path.add(new Cell(cell));
-        }
+    public int getY(int index) {
+        return pathY[index];
     }
 
-    public void add(Cell cell) {
-        path.add(new Cell(cell));
-    }
-
-    public Cell get(int index) {
-        return path.get(index);
+    public int getX(int index) {
+        return pathX[index];
     }
 
     public int size() {
-        return path.size();
+        return pathY.length;
     }
 
-    public void setColor(Color color) {
-        this.color = color;
+    /**
+     * Get the path with the same cells, but with another color
+     */
+    public Path withColor(int color) {
+        return new Path(pathY, pathX, color);
     }
 
-    public Color getColor() {
+    /**
+     * Get the packed RGB color of the path
+     */
+    public int getColor() {
         return this.color;
     }
 }
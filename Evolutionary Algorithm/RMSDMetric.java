@@ -0,0 +1,43 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Root Mean Square Deviation of color components.
+ * The error of the area is the sum of squared differences of color components,
+ * it consists of integers only, so sums of errors are exact.
+ */
+public class RMSDMetric implements Metric {
+    private final BufferedImage sourceImage;
+    private final int[] sourcePixels;
+
+    RMSDMetric(BufferedImage sourceImage) {
+        this.sourceImage = sourceImage;
+        sourcePixels = Calculation.getPixels(sourceImage);
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.RMSD;
+    }
+
+    @Override
+    public BufferedImage getSourceImage() {
+        return sourceImage;
+    }
+
+    @Override
+    public boolean isSeparable() {
+        return true;
+    }
+
+    @Override
+    public double calculateError(int[] pixels, int offset, int width, int startY, int startX, int areaWidth, int areaHeight) {
+        int imageWidth = sourceImage.getWidth();
+        return Calculation.calculateSquaredError(sourcePixels, startY * imageWidth + startX, imageWidth,
+                pixels, offset, width, areaWidth, areaHeight);
+    }
+
+    @Override
+    public double getDifference(double error) {
+        return Math.sqrt(error / (sourceImage.getWidth() * sourceImage.getHeight()));
+    }
+}
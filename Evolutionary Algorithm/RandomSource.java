@@ -0,0 +1,91 @@
+/**
+ * Generator of pseudo random numbers.
+ * It uses the SplitMix64 algorithm, so the whole state is one number
+ * which can be saved and restored to repeat the same sequence.
+ * <p>
+ * The generator isn't shared between threads. Instead, it can be split into the independent generator,
+ * as {@link java.util.SplittableRandom} does, so each task gets its own sequence of numbers,
+ * and the result doesn't depend on the order in which tasks are run.
+ */
+public class RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+    // Increment of the state, generators created by splitting have their own ones
+    private final long gamma;
+
+    RandomSource(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Create the generator with the given state and increment, they are taken from another generator
+     */
+    RandomSource(long seed, long gamma) {
+        this.state = seed;
+        this.gamma = gamma;
+    }
+
+    public long nextLong() {
+        long z = (state += gamma);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the random number in the range [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Get the random integer in the range [min, max)
+     */
+    public int nextInt(int min, int max) {
+        return (int) ((nextDouble() * (max - min)) + min);
+    }
+
+    /**
+     * Create the new generator whose numbers don't depend on the further numbers of this one
+     */
+    public RandomSource split() {
+        return new RandomSource(nextLong(), mixGamma(nextLong()));
+    }
+
+    /**
+     * Create the generator which continues the same sequence as this one
+     */
+    public RandomSource copy() {
+        return new RandomSource(state, gamma);
+    }
+
+    /**
+     * Get the odd increment of the state with enough changing bits, as SplittableRandom does
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+
+    /**
+     * Get the state of the generator, it doesn't include the increment of generators created by splitting
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Get the increment of the state, generators created by splitting have their own ones
+     */
+    public long getGamma() {
+        return gamma;
+    }
+}
@@ -0,0 +1,88 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes images as raw frames to the single file which is allocated beforehand.
+ * <p>
+ * The file starts with the header of four integers:
+ * the "EAFR" signature, the width, the height and the number of written frames.
+ * Then frames follow, each frame is the 24-bit RGB pixels row by row.
+ * The frame is converted in the buffer of one row, so the memory doesn't depend on the image size.
+ */
+public class RawFrameSink implements FrameSink {
+    private static final int MAGIC = 0x45414652;
+    private static final int HEADER_SIZE = 16;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int maxFrames;
+    private final ByteBuffer row;
+    private int frames;
+
+    /**
+     * @param filePath  path of the file
+     * @param width     width of images
+     * @param height    height of images
+     * @param maxFrames maximal number of frames
+     */
+    RawFrameSink(String filePath, int width, int height, int maxFrames) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.maxFrames = maxFrames;
+        this.row = ByteBuffer.allocate(width * 3);
+
+        file = new RandomAccessFile(filePath, "rw");
+        file.setLength(HEADER_SIZE + (long) maxFrames * width * height * 3);
+        channel = file.getChannel();
+        writeHeader();
+    }
+
+    @Override
+    public void write(int generation, BufferedImage image) throws IOException {
+        if (frames == maxFrames) {
+            throw new IOException("There is no space for the frame of the generation " + generation);
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IOException("The image of the generation " + generation + " has wrong size");
+        }
+
+        int[] pixels = Calculation.getPixels(image);
+        long position = HEADER_SIZE + (long) frames * width * height * 3;
+        for (int y = 0; y < height; y++) {
+            row.clear();
+            for (int x = 0; x < width; x++) {
+                int color = pixels[y * width + x];
+                row.put((byte) (color >> 16));
+                row.put((byte) (color >> 8));
+                row.put((byte) color);
+            }
+            row.flip();
+            while (row.hasRemaining()) {
+                position += channel.write(row, position);
+            }
+        }
+
+        frames++;
+        writeHeader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Frames which are not written are removed if the algorithm is stopped earlier
+        channel.truncate(HEADER_SIZE + (long) frames * width * height * 3);
+        channel.force(true);
+        file.close();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(width).putInt(height).putInt(frames);
+        header.flip();
+        channel.write(header, 0);
+    }
+}
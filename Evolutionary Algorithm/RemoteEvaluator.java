@@ -0,0 +1,248 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates chromosomes by worker processes connected over TCP, see {@link Worker}.
+ * <p>
+ * Mutated chromosomes differ from their parent by one gene,
+ * so only this gene and the index of its block are sent.
+ * Genes are sent by batches, and each worker takes the next batch when it answers the previous one.
+ * If the worker fails, doesn't answer or its answer can't be used, its batch is returned to the queue for other workers,
+ * and if there are no workers anymore, chromosomes are evaluated locally.
+ * Chromosomes which are not evaluated by workers for any other reason are evaluated locally too,
+ * so failures of workers never stop the algorithm.
+ * Chromosomes which can't be evaluated by one block are evaluated locally too.
+ * <p>
+ * Images of chromosomes evaluated by workers are calculated only when they are needed.
+ */
+public class RemoteEvaluator implements Evaluator {
+    // Time to wait for the answer of the worker
+    private static final int TIMEOUT = 60_000;
+
+    private final ArrayList<Connection> connections = new ArrayList<>();
+    private final ExecutorService executor;
+    private final LocalEvaluator localEvaluator;
+    private final Metric metric;
+    private final int batchSize;
+
+    /**
+     * Connect to workers and send them the source image and the metric.
+     * Workers which can't be connected are skipped.
+     *
+     * @param workers        addresses of workers host:port separated by commas
+     * @param metric         metric with the original image
+     * @param batchSize      number of genes sent to the worker at once
+     * @param localEvaluator evaluator of chromosomes which are not evaluated by workers
+     */
+    RemoteEvaluator(String workers, Metric metric, int batchSize, LocalEvaluator localEvaluator) {
+        this.batchSize = batchSize;
+        this.localEvaluator = localEvaluator;
+        this.metric = metric;
+
+        for (String address : workers.split(",")) {
+            address = address.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            try {
+                connections.add(new Connection(address, metric));
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Worker " + address + " can't be connected: " + e.getMessage());
+            }
+        }
+        executor = connections.isEmpty() ? null : Executors.newFixedThreadPool(connections.size(), task -> {
+            Thread thread = new Thread(task, "remote-evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Calculate RMSD values of chromosomes.
+     * The time of fitness is the time of waiting for workers.
+     */
+    @Override
+    public void evaluate(ArrayList<Chromosome> chromosomes, BufferedImage sourceImage, GenerationStatistics statistics) {
+        ArrayList<Chromosome> localChromosomes = new ArrayList<>();
+        ArrayList<Chromosome> remoteChromosomes = new ArrayList<>();
+        ConcurrentLinkedQueue<List<Chromosome>> batches = new ConcurrentLinkedQueue<>();
+
+        ArrayList<Chromosome> batch = new ArrayList<>(batchSize);
+        for (Chromosome chromosome : chromosomes) {
+            if (chromosome.getChangedBlock() < 0) {
+                localChromosomes.add(chromosome);
+                continue;
+            }
+            batch.add(chromosome);
+            remoteChromosomes.add(chromosome);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        long startTime = System.nanoTime();
+        ArrayList<Future<?>> tasks = new ArrayList<>(connections.size());
+        for (Connection connection : connections) {
+            if (connection.isAlive()) {
+                tasks.add(executor.submit(() -> {
+                    long allocation = statistics.startAllocation();
+                    try {
+                        connection.evaluate(batches, metric);
+                    } finally {
+                        statistics.stopAllocation(allocation);
+                    }
+                }));
+            }
+        }
+        // Tasks are waited for even if the thread is interrupted, because they can still set errors of chromosomes
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    System.out.println("Remote evaluation failed: " + e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        statistics.addTime(GenerationStatistics.Phase.FITNESS, startTime);
+
+        // Chromosomes of batches which are left after failures of workers
+        for (Chromosome chromosome : remoteChromosomes) {
+            if (chromosome.getChangedBlock() >= 0) {
+                localChromosomes.add(chromosome);
+            }
+        }
+        localEvaluator.evaluate(localChromosomes, sourceImage, statistics);
+    }
+
+    /**
+     * Close connections to workers
+     */
+    public void close() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Connection to the single worker, it is used by one thread at once
+     */
+    private static class Connection {
+        private final String address;
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        private volatile boolean alive = true;
+
+        Connection(String address, Metric metric) throws IOException {
+            this.address = address;
+            int separator = address.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("the address has no port");
+            }
+            int port = Integer.parseInt(address.substring(separator + 1));
+
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(address.substring(0, separator), port), TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            socket.setTcpNoDelay(true);
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            output.writeInt(Worker.MAGIC);
+            output.writeInt(Worker.VERSION);
+            Worker.writeImage(output, metric.getSourceImage());
+            output.writeUTF(metric.getKind().name());
+            output.flush();
+        }
+
+        boolean isAlive() {
+            return alive;
+        }
+
+        /**
+         * Evaluate batches from the queue until it is empty.
+         * If the worker fails or its answer is wrong, its batch is returned to the queue and the connection is closed.
+         */
+        void evaluate(ConcurrentLinkedQueue<List<Chromosome>> batches, Metric metric) {
+            List<Chromosome> batch;
+            while ((batch = batches.poll()) != null) {
+                try {
+                    double[] errors = send(batch);
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).setChangedBlockError(errors[i], metric);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    batches.add(batch);
+                    System.out.println("Worker " + address + " is disconnected: " + e);
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Send genes of chromosomes and receive errors of their blocks
+         */
+        private double[] send(List<Chromosome> batch) throws IOException {
+            Chromosome first = batch.get(0);
+            output.writeInt(first.getBlockNumbersY());
+            output.writeInt(first.getBlockNumbersX());
+            output.writeInt(first.getBlockSizeY());
+            output.writeInt(first.getBlockSizeX());
+            output.writeInt(batch.size());
+            for (Chromosome chromosome : batch) {
+                int block = chromosome.getChangedBlock();
+                output.writeInt(block);
+                Worker.writeGene(output, chromosome.getGene(block / chromosome.getBlockNumbersX(), block % chromosome.getBlockNumbersX()));
+            }
+            output.flush();
+
+            if (input.readInt() != batch.size()) {
+                throw new IOException("Wrong answer of the worker");
+            }
+            double[] errors = new double[batch.size()];
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] = input.readDouble();
+            }
+            return errors;
+        }
+
+        void close() {
+            alive = false;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The connection is already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Structural similarity (SSIM) of brightness of images.
+ * It compares means, variances and the covariance of brightness in small windows,
+ * so it notices the structure of the image better than the difference of separate pixels.
+ * <p>
+ * Windows are placed inside the area with the half overlap, so the error of the area depends only on its pixels.
+ * The error of the area is the average dissimilarity 1 - SSIM of its windows multiplied by the number of pixels,
+ * and the difference of the whole image is the average dissimilarity in percent.
+ * <p>
+ * Sums of windows are taken from summed-area tables, where each element is the sum of the rectangle above and to the left of it.
+ * Tables of the source image are calculated once, and tables of the area are calculated by one pass over its pixels.
+ */
+public class SSIMMetric implements Metric {
+    private static final int WINDOW_SIZE = 8;
+    private static final int WINDOW_STEP = 4;
+    // Constants which stabilize the division for dark and flat windows
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    // Buffers for summed-area tables of the area, they belong to the thread
+    private static final ThreadLocal<long[][]> tables = ThreadLocal.withInitial(() -> new long[3][0]);
+
+    private final BufferedImage sourceImage;
+    // Brightness of source pixels
+    private final int[] sourceBrightness;
+    // Summed-area tables of the source brightness and its squares with the size (width + 1) * (height + 1)
+    private final long[] sourceSums;
+    private final long[] sourceSquares;
+
+    SSIMMetric(BufferedImage sourceImage) {
+        this.sourceImage = sourceImage;
+        int width = sourceImage.getWidth();
+        int height = sourceImage.getHeight();
+        int[] pixels = Calculation.getPixels(sourceImage);
+
+        sourceBrightness = new int[width * height];
+        sourceSums = new long[(width + 1) * (height + 1)];
+        sourceSquares = new long[(width + 1) * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            long rowSum = 0;
+            long rowSquares = 0;
+            for (int x = 0; x < width; x++) {
+                int brightness = getBrightness(pixels[y * width + x]);
+                sourceBrightness[y * width + x] = brightness;
+                rowSum += brightness;
+                rowSquares += brightness * brightness;
+                int index = (y + 1) * (width + 1) + x + 1;
+                sourceSums[index] = sourceSums[index - width - 1] + rowSum;
+                sourceSquares[index] = sourceSquares[index - width - 1] + rowSquares;
+            }
+        }
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.SSIM;
+    }
+
+    @Override
+    public BufferedImage getSourceImage() {
+        return sourceImage;
+    }
+
+    @Override
+    public boolean isSeparable() {
+        return false;
+    }
+
+    @Override
+    public double calculateError(int[] pixels, int offset, int width, int startY, int startX, int areaWidth, int areaHeight) {
+        int imageWidth = sourceImage.getWidth();
+        int tableWidth = areaWidth + 1;
+        int tableSize = tableWidth * (areaHeight + 1);
+        long[][] buffers = tables.get();
+        if (buffers[0].length < tableSize) {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new long[tableSize];
+            }
+        }
+        // Summed-area tables of the brightness of the area, its squares and its products with the source brightness
+        long[] sums = buffers[0];
+        long[] squares = buffers[1];
+        long[] products = buffers[2];
+
+        for (int x = 0; x < tableWidth; x++) {
+            sums[x] = 0;
+            squares[x] = 0;
+            products[x] = 0;
+        }
+        for (int y = 0; y < areaHeight; y++) {
+            long rowSum = 0;
+            long rowSquares = 0;
+            long rowProducts = 0;
+            int index = (y + 1) * tableWidth;
+            sums[index] = 0;
+            squares[index] = 0;
+            products[index] = 0;
+            for (int x = 0; x < areaWidth; x++) {
+                int brightness = getBrightness(pixels[offset + y * width + x]);
+                int sourceValue = sourceBrightness[(startY + y) * imageWidth + startX + x];
+                rowSum += brightness;
+                rowSquares += brightness * brightness;
+                rowProducts += brightness * sourceValue;
+                index++;
+                sums[index] = sums[index - tableWidth] + rowSum;
+                squares[index] = squares[index - tableWidth] + rowSquares;
+                products[index] = products[index - tableWidth] + rowProducts;
+            }
+        }
+
+        // Windows are smaller than WINDOW_SIZE only if the area is smaller,
+        // the last window of the row or the column is moved to the edge of the area
+        int windowHeight = Math.min(WINDOW_SIZE, areaHeight);
+        int windowWidth = Math.min(WINDOW_SIZE, areaWidth);
+        double size = windowHeight * windowWidth;
+        double dissimilarity = 0;
+        int windows = 0;
+        for (int y = 0; ; y = Math.min(y + WINDOW_STEP, areaHeight - windowHeight)) {
+            for (int x = 0; ; x = Math.min(x + WINDOW_STEP, areaWidth - windowWidth)) {
+                double meanSource = getSum(sourceSums, imageWidth + 1, startY + y, startX + x, windowHeight, windowWidth) / size;
+                double meanImage = getSum(sums, tableWidth, y, x, windowHeight, windowWidth) / size;
+                double varianceSource = getSum(sourceSquares, imageWidth + 1, startY + y, startX + x, windowHeight, windowWidth) / size
+                        - meanSource * meanSource;
+                double varianceImage = getSum(squares, tableWidth, y, x, windowHeight, windowWidth) / size - meanImage * meanImage;
+                double covariance = getSum(products, tableWidth, y, x, windowHeight, windowWidth) / size - meanSource * meanImage;
+
+                double similarity = (2 * meanSource * meanImage + C1) * (2 * covariance + C2)
+                        / ((meanSource * meanSource + meanImage * meanImage + C1) * (varianceSource + varianceImage + C2));
+                dissimilarity += 1 - similarity;
+                windows++;
+                if (x == areaWidth - windowWidth) {
+                    break;
+                }
+            }
+            if (y == areaHeight - windowHeight) {
+                break;
+            }
+        }
+
+        return dissimilarity / windows * areaWidth * areaHeight;
+    }
+
+    @Override
+    public double getDifference(double error) {
+        return 100 * error / (sourceImage.getWidth() * sourceImage.getHeight());
+    }
+
+    /**
+     * Get the sum of the rectangle from the summed-area table
+     */
+    private static long getSum(long[] table, int tableWidth, int y, int x, int height, int width) {
+        return table[(y + height) * tableWidth + x + width] - table[y * tableWidth + x + width]
+                - table[(y + height) * tableWidth + x] + table[y * tableWidth + x];
+    }
+
+    /**
+     * Get the brightness (luma) of the packed RGB color from 0 to 255
+     */
+    private static int getBrightness(int color) {
+        return (77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF) + 128) >> 8;
+    }
+}
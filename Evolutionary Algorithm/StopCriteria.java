@@ -0,0 +1,56 @@
+/**
+ * Conditions to stop the algorithm before the last generation.
+ * They can be combined, the algorithm stops when any of them is met:
+ * the RMSD value reaches the target, the RMSD value doesn't improve enough
+ * during the given number of generations, or the time of the algorithm is over.
+ */
+public class StopCriteria {
+    private final double targetRMSD;
+    private final int plateauGenerations;
+    private final double plateauEpsilon;
+    private final long timeLimit;
+
+    // RMSD values of last generations, the value of the generation i has index i % length
+    private final double[] history;
+    private int generations;
+
+    /**
+     * @param targetRMSD         RMSD value which is enough, or 0 to not check it
+     * @param plateauGenerations number of generations to check the improvement, or 0 to not check it
+     * @param plateauEpsilon     the least improvement of the RMSD value during these generations
+     * @param timeLimit          time of the algorithm in nanoseconds, or 0 to not check it
+     */
+    StopCriteria(double targetRMSD, int plateauGenerations, double plateauEpsilon, long timeLimit) {
+        this.targetRMSD = targetRMSD;
+        this.plateauGenerations = plateauGenerations;
+        this.plateauEpsilon = plateauEpsilon;
+        this.timeLimit = timeLimit;
+        this.history = new double[plateauGenerations + 1];
+    }
+
+    /**
+     * Check conditions after the generation
+     *
+     * @param RMSD RMSD value of the best chromosome of the generation
+     * @param time time of the algorithm in nanoseconds
+     * @return the reason to stop the algorithm, or null to continue it
+     */
+    public String check(double RMSD, long time) {
+        history[generations % history.length] = RMSD;
+        generations++;
+
+        if (targetRMSD > 0 && RMSD <= targetRMSD) {
+            return "the target difference " + targetRMSD + " is reached";
+        }
+        if (plateauGenerations > 0 && generations > plateauGenerations) {
+            double previousRMSD = history[generations % history.length];
+            if (previousRMSD - RMSD <= plateauEpsilon) {
+                return "the difference is improved by at most " + plateauEpsilon + " during " + plateauGenerations + " generations";
+            }
+        }
+        if (timeLimit > 0 && time >= timeLimit) {
+            return "the time limit is over";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,269 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Fast approximate fitness of mutated chromosomes at the low resolution.
+ * It is used to choose the part of the population which is evaluated at the full resolution.
+ * <p>
+ * The source image is reduced to one pixel per cell of the maze, that is the average color of the cell area.
+ * In the area of the cell the path draws the square of the cell and the part of the space to each connected neighbour cell,
+ * so the cell with the color c covers n pixels, for example n = 4 + 2 * connections when the cell has 4x4 pixels.
+ * If the source pixels of the area have the average color m,
+ * the squared error of the area is n * (|c - m|^2 - |m|^2) plus the value which doesn't depend on the gene.
+ * The sum of these values over cells of the block estimates the error of the block.
+ */
+public class Surrogate {
+    // Readers of paths of estimated genes, they belong to the thread
+    private static final ThreadLocal<Gene.PathCursor> cursors = ThreadLocal.withInitial(Gene.PathCursor::new);
+    // Colors and covered pixels of cells of the estimated gene, they belong to the thread
+    private static final ThreadLocal<int[][]> cellBuffers = ThreadLocal.withInitial(() -> new int[2][0]);
+
+    private final int blockSizeY;
+    private final int blockSizeX;
+    // Average colors of cell areas of the source image as packed RGB pixels, one pixel per cell
+    private final int[] cells;
+    private final int cellsX;
+    // Sizes of the square of each cell along the coordinate
+    private final int[] squaresY;
+    private final int[] squaresX;
+    // Sizes of the space before and after the square of each cell along the coordinate
+    private final int[] spacesBeforeY;
+    private final int[] spacesBeforeX;
+    private final int[] spacesAfterY;
+    private final int[] spacesAfterX;
+    private final double fraction;
+    private final int samplePeriod;
+
+    /**
+     * @param sourceImage   original image
+     * @param blockNumbersY number of blocks along the y coordinate
+     * @param blockNumbersX number of blocks along the x coordinate
+     * @param blockSizeY    number of cells of the block along the y coordinate
+     * @param blockSizeX    number of cells of the block along the x coordinate
+     * @param fraction      part of the population which is evaluated at the full resolution
+     * @param samplePeriod  each mutated chromosome with this period is evaluated at the full resolution
+     *                      to measure the agreement of the surrogate, even if it is dropped
+     */
+    Surrogate(BufferedImage sourceImage, int blockNumbersY, int blockNumbersX, int blockSizeY, int blockSizeX, double fraction,
+              int samplePeriod) {
+        this.blockSizeY = blockSizeY;
+        this.blockSizeX = blockSizeX;
+        this.fraction = fraction;
+        this.samplePeriod = samplePeriod;
+        int cellsY = blockNumbersY * blockSizeY;
+        cellsX = blockNumbersX * blockSizeX;
+
+        int[] cellStartsY = new int[cellsY + 1];
+        int[] cellStartsX = new int[cellsX + 1];
+        squaresY = new int[cellsY];
+        squaresX = new int[cellsX];
+        spacesBeforeY = new int[cellsY];
+        spacesBeforeX = new int[cellsX];
+        spacesAfterY = new int[cellsY];
+        spacesAfterX = new int[cellsX];
+        calculateCells(sourceImage.getHeight(), blockNumbersY, blockSizeY, cellStartsY, squaresY, spacesBeforeY, spacesAfterY);
+        calculateCells(sourceImage.getWidth(), blockNumbersX, blockSizeX, cellStartsX, squaresX, spacesBeforeX, spacesAfterX);
+
+        cells = new int[cellsY * cellsX];
+        int[] pixels = Calculation.getPixels(sourceImage);
+        int imageWidth = sourceImage.getWidth();
+        for (int y = 0; y < cellsY; y++) {
+            for (int x = 0; x < cellsX; x++) {
+                long red = 0;
+                long green = 0;
+                long blue = 0;
+                for (int row = cellStartsY[y]; row < cellStartsY[y + 1]; row++) {
+                    for (int column = cellStartsX[x]; column < cellStartsX[x + 1]; column++) {
+                        int color = pixels[row * imageWidth + column];
+                        red += (color >> 16) & 0xFF;
+                        green += (color >> 8) & 0xFF;
+                        blue += color & 0xFF;
+                    }
+                }
+                long count = (long) (cellStartsY[y + 1] - cellStartsY[y]) * (cellStartsX[x + 1] - cellStartsX[x]);
+                if (count > 0) {
+                    cells[y * cellsX + x] = (int) ((red + count / 2) / count) << 16
+                            | (int) ((green + count / 2) / count) << 8
+                            | (int) ((blue + count / 2) / count);
+                }
+            }
+        }
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public int getSamplePeriod() {
+        return samplePeriod;
+    }
+
+    /**
+     * Estimate the change of the squared error of the mutated chromosome against its parent.
+     * Chromosomes of the same parent with less estimations are more likely to be better.
+     *
+     * @param parent    evaluated parent
+     * @param candidate chromosome which differs from the parent by the gene of the changed block
+     * @return estimated change of the squared error, or 0 if the chromosome has no single changed block
+     */
+    public double estimate(Chromosome parent, Chromosome candidate) {
+        int block = candidate.getChangedBlock();
+        if (block < 0) {
+            return 0;
+        }
+        int blockY = block / candidate.getBlockNumbersX();
+        int blockX = block % candidate.getBlockNumbersX();
+        return estimateGene(candidate.getGene(blockY, blockX), blockY, blockX)
+                - estimateGene(parent.getGene(blockY, blockX), blockY, blockX);
+    }
+
+    /**
+     * Estimate the squared error of the gene without the part which doesn't depend on the gene
+     */
+    private double estimateGene(Gene gene, int blockY, int blockX) {
+        int[][] buffers = cellBuffers.get();
+        if (buffers[0].length < blockSizeY * blockSizeX) {
+            buffers[0] = new int[blockSizeY * blockSizeX];
+            buffers[1] = new int[blockSizeY * blockSizeX];
+        }
+        // Colors are read only for covered cells, so they are not cleared
+        int[] colors = buffers[0];
+        // Number of pixels which the path covers in the area of each cell
+        int[] covered = buffers[1];
+        Arrays.fill(covered, 0, blockSizeY * blockSizeX, 0);
+        int firstY = blockY * blockSizeY;
+        int firstX = blockX * blockSizeX;
+
+        Gene.PathCursor path = cursors.get();
+        path.start(gene);
+        while (path.next()) {
+            for (int i = 0; i < path.size(); i++) {
+                int y = path.getY(i);
+                int x = path.getX(i);
+                int cell = y * blockSizeX + x;
+                colors[cell] = path.getColor();
+                covered[cell] += squaresY[firstY + y] * squaresX[firstX + x];
+                if (i > 0) {
+                    // The connection covers the space between squares of the previous cell and this cell
+                    int previousY = path.getY(i - 1);
+                    int previousX = path.getX(i - 1);
+                    int previous = previousY * blockSizeX + previousX;
+                    if (previousX == x) {
+                        int upper = Math.min(previousY, y);
+                        covered[upper * blockSizeX + x] += spacesAfterY[firstY + upper] * squaresX[firstX + x];
+                        covered[(upper + 1) * blockSizeX + x] += spacesBeforeY[firstY + upper + 1] * squaresX[firstX + x];
+                    } else {
+                        int left = Math.min(previousX, x);
+                        covered[y * blockSizeX + left] += spacesAfterX[firstX + left] * squaresY[firstY + y];
+                        covered[y * blockSizeX + left + 1] += spacesBeforeX[firstX + left + 1] * squaresY[firstY + y];
+                    }
+                }
+            }
+        }
+
+        double error = 0;
+        for (int y = 0; y < blockSizeY; y++) {
+            for (int x = 0; x < blockSizeX; x++) {
+                int cell = y * blockSizeX + x;
+                if (covered[cell] == 0) {
+                    continue;
+                }
+
+                int source = cells[(firstY + y) * cellsX + firstX + x];
+                int sourceRed = (source >> 16) & 0xFF;
+                int sourceGreen = (source >> 8) & 0xFF;
+                int sourceBlue = source & 0xFF;
+                int redDiff = ((colors[cell] >> 16) & 0xFF) - sourceRed;
+                int greenDiff = ((colors[cell] >> 8) & 0xFF) - sourceGreen;
+                int blueDiff = (colors[cell] & 0xFF) - sourceBlue;
+                error += (double) covered[cell] * (redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff
+                        - sourceRed * sourceRed - sourceGreen * sourceGreen - sourceBlue * sourceBlue);
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Calculate bounds of cells and their squares along the coordinate in the same way as chromosomes draw them
+     *
+     * @param imageSize    image size along the coordinate
+     * @param blockNumbers number of blocks along the coordinate
+     * @param blockSize    number of cells of the block along the coordinate
+     * @param cellStarts   first pixel coordinates of cells and the image size at the end
+     * @param squares      sizes of squares of cells
+     * @param spacesBefore sizes of the space before squares of cells
+     * @param spacesAfter  sizes of the space after squares of cells
+     */
+    private static void calculateCells(int imageSize, int blockNumbers, int blockSize,
+                                       int[] cellStarts, int[] squares, int[] spacesBefore, int[] spacesAfter) {
+        for (int block = 0; block < blockNumbers; block++) {
+            int blockStart = Chromosome.getBlockStart(block, blockNumbers, imageSize);
+            int blockEnd = Chromosome.getBlockStart(block + 1, blockNumbers, imageSize);
+            for (int cell = 0; cell < blockSize; cell++) {
+                int index = block * blockSize + cell;
+                int cellStart = Chromosome.getCellStart(cell, blockSize, blockStart, blockEnd);
+                int cellEnd = Chromosome.getCellStart(cell + 1, blockSize, blockStart, blockEnd);
+                int squareStart = Chromosome.getSquareStart(cell, blockSize, blockStart, blockEnd);
+                int squareEnd = Chromosome.getSquareEnd(cell, blockSize, blockStart, blockEnd);
+                cellStarts[index] = cellStart;
+                squares[index] = Math.max(squareEnd - squareStart + 1, 0);
+                spacesBefore[index] = squareStart - cellStart;
+                spacesAfter[index] = Math.max(cellEnd - 1 - squareEnd, 0);
+            }
+        }
+        cellStarts[blockNumbers * blockSize] = imageSize;
+    }
+
+    /**
+     * Calculate the Spearman's rank correlation of two lists of values.
+     * It is 1 if the lists are ordered in the same way, and -1 if they are ordered in the opposite ways.
+     *
+     * @return correlation, or NaN if there are less than two values
+     */
+    public static double calculateSpearman(double[] first, double[] second) {
+        int n = first.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double[] firstRanks = getRanks(first);
+        double[] secondRanks = getRanks(second);
+
+        double mean = (n - 1) / 2.0;
+        double covariance = 0;
+        double firstVariance = 0;
+        double secondVariance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (firstRanks[i] - mean) * (secondRanks[i] - mean);
+            firstVariance += (firstRanks[i] - mean) * (firstRanks[i] - mean);
+            secondVariance += (secondRanks[i] - mean) * (secondRanks[i] - mean);
+        }
+        if (firstVariance == 0 || secondVariance == 0) {
+            return Double.NaN;
+        }
+        return covariance / Math.sqrt(firstVariance * secondVariance);
+    }
+
+    /**
+     * Get ranks of values from 0, equal values have the average rank
+     */
+    private static double[] getRanks(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> Double.compare(values[first], values[second]));
+
+        double[] ranks = new double[values.length];
+        for (int i = 0; i < order.length; ) {
+            int j = i;
+            while (j + 1 < order.length && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            for (int k = i; k <= j; k++) {
+                ranks[order[k]] = (i + j) / 2.0;
+            }
+            i = j + 1;
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,27 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Source images of tests and benchmarks.
+ * It lies next to the program, so the tests and the jmh profile use the same images.
+ */
+class TestImages {
+    /**
+     * Create the image with smooth gradients and random noise,
+     * so it has many colors like a photo
+     */
+    static BufferedImage createSourceImage(int width, int height, long seed) {
+        RandomSource random = new RandomSource(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = Calculation.getPixels(image);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = (int) (random.nextDouble() * 32);
+                int red = (255 * x / width + noise) & 0xFF;
+                int green = (255 * y / height + noise) & 0xFF;
+                int blue = (int) (127.5 + 127.5 * Math.sin((x + y) * 0.02)) ^ noise;
+                pixels[y * width + x] = (red << 16) | (green << 8) | (blue & 0xFF);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,135 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Process which calculates errors of mutated genes for the algorithm running in other process.
+ * <p>
+ * The algorithm connects to the worker and sends the source image and the name of the metric once.
+ * Then it sends batches of mutated genes with indexes of their blocks,
+ * and the worker answers with errors of these blocks according to the metric.
+ * The error of the block depends only on its gene, so parents of chromosomes are not sent.
+ * <p>
+ * Each connection is served by its own thread, so several algorithms can use the same worker.
+ */
+public class Worker {
+    static final int MAGIC = 0x45415752;
+    static final int VERSION = 4;
+
+    /**
+     * @param args port of the worker
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java Worker <port>");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Worker is listening on the port " + port);
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Answer requests of the single connection until it is closed
+     */
+    private static void serve(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            connection.setTcpNoDelay(true);
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unknown protocol");
+            }
+            BufferedImage sourceImage = readImage(input);
+            Metric metric;
+            try {
+                metric = Metric.Kind.valueOf(input.readUTF()).create(sourceImage);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown metric");
+            }
+            System.out.println("Connected: " + connection.getRemoteSocketAddress());
+
+            while (true) {
+                int blockNumbersY;
+                try {
+                    blockNumbersY = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int blockNumbersX = input.readInt();
+                int blockSizeY = input.readInt();
+                int blockSizeX = input.readInt();
+                int amount = input.readInt();
+
+                double[] errors = new double[amount];
+                for (int i = 0; i < amount; i++) {
+                    int block = input.readInt();
+                    Gene gene = readGene(input, blockSizeY, blockSizeX);
+                    errors[i] = Chromosome.calculateGeneError(gene, block, blockNumbersY, blockNumbersX, metric);
+                }
+
+                output.writeInt(amount);
+                for (double error : errors) {
+                    output.writeDouble(error);
+                }
+                output.flush();
+            }
+            System.out.println("Disconnected: " + connection.getRemoteSocketAddress());
+        } catch (IOException e) {
+            System.out.println("Connection is closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write sizes and packed RGB pixels of the image
+     */
+    static void writeImage(DataOutputStream output, BufferedImage image) throws IOException {
+        output.writeInt(image.getWidth());
+        output.writeInt(image.getHeight());
+        for (int pixel : Calculation.getPixels(image)) {
+            output.writeInt(pixel & 0xFFFFFF);
+        }
+    }
+
+    private static BufferedImage readImage(DataInputStream input) throws IOException {
+        int width = input.readInt();
+        int height = input.readInt();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = Calculation.getPixels(image);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = input.readInt();
+        }
+        return image;
+    }
+
+    /**
+     * Write the gene as the length of its code and the code, where all colors are written as RGB,
+     * because the worker doesn't have the color palette.
+     * Codes of large blocks are longer than 65535 bytes, so the length is the variable-length number.
+     */
+    static void writeGene(DataOutputStream output, Gene gene) throws IOException {
+        byte[] code = gene.getCode(null);
+        Gene.writeNumber(output, code.length);
+        output.write(code);
+    }
+
+    static Gene readGene(DataInputStream input, int blockSizeY, int blockSizeX) throws IOException {
+        byte[] code = new byte[Gene.readNumber(input)];
+        input.readFully(code);
+        return Gene.fromCode(blockSizeY, blockSizeX, code, null);
+    }
+}
@@ -0,0 +1,124 @@
+import benchmarks.Workload;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * Hot paths of the algorithm called by the JMH benchmarks:
+ * color palette, metrics, maze generation, drawing, mutation and the whole generation.
+ */
+public class HotPaths implements Workload {
+    private static final long SEED = 42;
+
+    private int blockNumbers;
+    private int blockSize;
+    private int imageSize;
+    private RandomSource random;
+    private BufferedImage sourceImage;
+    private Metric metric;
+    private Metric kindMetric;
+    private Chromosome chromosome;
+    private BufferedImage image;
+    private Surrogate surrogate;
+    private Gene gene;
+
+    @Override
+    public void setUp(int blockNumbers, int blockSize, String metric) {
+        this.blockNumbers = blockNumbers;
+        this.blockSize = blockSize;
+        imageSize = blockNumbers * blockSize * 4;
+        random = new RandomSource(SEED);
+
+        sourceImage = TestImages.createSourceImage(imageSize, imageSize, SEED);
+        this.metric = new RMSDMetric(sourceImage);
+        kindMetric = Metric.Kind.valueOf(metric.toUpperCase()).create(sourceImage);
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+
+        chromosome = new Chromosome(blockNumbers, blockNumbers, blockSize, blockSize, random);
+        chromosome.calculateImage(imageSize, imageSize);
+        chromosome.calculateRMSD(this.metric);
+        image = chromosome.getImage();
+        surrogate = new Surrogate(sourceImage, blockNumbers, blockNumbers, blockSize, blockSize, 0.25, 16);
+        gene = new Gene(blockSize, blockSize, random);
+    }
+
+    @Override
+    public double calculateColorPalette() {
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+        return Calculation.getColorPalette().length;
+    }
+
+    @Override
+    public double calculateRootMeanSquareDeviation() {
+        return Calculation.calculateRootMeanSquareDeviation(sourceImage, image);
+    }
+
+    @Override
+    public double calculateError() {
+        return kindMetric.calculateError(Calculation.getPixels(image), 0, imageSize, 0, 0, imageSize, imageSize);
+    }
+
+    @Override
+    public double calculateImage() {
+        Chromosome copy = new Chromosome(blockNumbers, blockNumbers, blockSize, blockSize, getGenes(chromosome));
+        copy.calculateImage(imageSize, imageSize);
+        return copy.getImage().getWidth();
+    }
+
+    @Override
+    public double calculateRMSDByTiles() {
+        Chromosome copy = new Chromosome(blockNumbers, blockNumbers, blockSize, blockSize, getGenes(chromosome));
+        copy.calculateRMSDByTiles(metric);
+        return copy.getRMSD();
+    }
+
+    @Override
+    public double mutate() {
+        ArrayList<Chromosome> siblings = chromosome.mutate(chromosome, 4, random);
+        for (Chromosome sibling : siblings) {
+            sibling.calculateImage(imageSize, imageSize);
+            sibling.calculateRMSD(metric);
+        }
+        return siblings.get(0).getRMSD();
+    }
+
+    @Override
+    public double nextGeneration() {
+        return nextGeneration(new LocalEvaluator(null, metric, false), null);
+    }
+
+    @Override
+    public double nextGenerationWithSurrogate() {
+        return nextGeneration(new LocalEvaluator(null, metric, false), surrogate);
+    }
+
+    @Override
+    public double nextGenerationTiled() {
+        return nextGeneration(new LocalEvaluator(null, metric, true), null);
+    }
+
+    @Override
+    public double fillMaze() {
+        return new Gene(blockSize, blockSize, random).getPaths().size();
+    }
+
+    @Override
+    public double getPaths() {
+        return gene.getPaths().size();
+    }
+
+    private double nextGeneration(Evaluator evaluator, Surrogate surrogate) {
+        return Evolution.nextGeneration(chromosome, 50, 4, 10, Chromosome.Coloring.RANDOM, null, random, sourceImage, evaluator, surrogate, 64,
+                new GenerationStatistics()).getRMSD();
+    }
+
+    private static Gene[] getGenes(Chromosome chromosome) {
+        Gene[] genes = new Gene[chromosome.getBlockNumbersY() * chromosome.getBlockNumbersX()];
+        for (int y = 0; y < chromosome.getBlockNumbersY(); y++) {
+            for (int x = 0; x < chromosome.getBlockNumbersX(); x++) {
+                genes[y * chromosome.getBlockNumbersX() + x] = chromosome.getGene(y, x);
+            }
+        }
+        return genes;
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the chromosome and the whole generation for several sizes of the grid and blocks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class GenerationBenchmark {
+    @Param({"8", "16"})
+    public int blockNumbers;
+
+    @Param({"8", "16"})
+    public int blockSize;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create(blockNumbers, blockSize, "rmsd");
+    }
+
+    @Benchmark
+    public double calculateColorPalette() {
+        return workload.calculateColorPalette();
+    }
+
+    @Benchmark
+    public double calculateRootMeanSquareDeviation() {
+        return workload.calculateRootMeanSquareDeviation();
+    }
+
+    @Benchmark
+    public double calculateImage() {
+        return workload.calculateImage();
+    }
+
+    @Benchmark
+    public double calculateRMSDByTiles() {
+        return workload.calculateRMSDByTiles();
+    }
+
+    @Benchmark
+    public double mutate() {
+        return workload.mutate();
+    }
+
+    @Benchmark
+    public double nextGeneration() {
+        return workload.nextGeneration();
+    }
+
+    @Benchmark
+    public double nextGenerationWithSurrogate() {
+        return workload.nextGenerationWithSurrogate();
+    }
+
+    @Benchmark
+    public double nextGenerationTiled() {
+        return workload.nextGenerationTiled();
+    }
+}
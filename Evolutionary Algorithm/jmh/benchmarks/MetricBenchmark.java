@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of each metric on the whole image
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class MetricBenchmark {
+    @Param({"8", "16"})
+    public int blockNumbers;
+
+    @Param({"8", "16"})
+    public int blockSize;
+
+    @Param({"rmsd", "ssim", "delta_e"})
+    public String metric;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create(blockNumbers, blockSize, metric);
+    }
+
+    @Benchmark
+    public double calculateError() {
+        return workload.calculateError();
+    }
+}
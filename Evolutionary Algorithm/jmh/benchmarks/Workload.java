@@ -0,0 +1,53 @@
+package benchmarks;
+
+/**
+ * Operations of the algorithm which are measured by the benchmarks.
+ * <p>
+ * Classes of the algorithm lie in the default package, which can't be imported,
+ * and JMH doesn't accept benchmarks in the default package.
+ * So benchmarks call the algorithm through this interface,
+ * and its implementation HotPaths lies in the default package.
+ * <p>
+ * Each operation returns some result, so it can't be skipped by the compiler.
+ */
+public interface Workload {
+    /**
+     * Create the workload for the grid of blockNumbers x blockNumbers blocks of blockSize x blockSize cells.
+     * The image size is blockNumbers * blockSize * 4, the metric is the name of Metric.Kind.
+     * The source image is generated and random numbers start from the fixed seed,
+     * so results of different runs are comparable.
+     */
+    static Workload create(int blockNumbers, int blockSize, String metric) {
+        try {
+            Workload workload = (Workload) Class.forName("HotPaths").getDeclaredConstructor().newInstance();
+            workload.setUp(blockNumbers, blockSize, metric);
+            return workload;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Workload can't be created", e);
+        }
+    }
+
+    void setUp(int blockNumbers, int blockSize, String metric);
+
+    double calculateColorPalette();
+
+    double calculateRootMeanSquareDeviation();
+
+    double calculateError();
+
+    double calculateImage();
+
+    double calculateRMSDByTiles();
+
+    double mutate();
+
+    double nextGeneration();
+
+    double nextGenerationWithSurrogate();
+
+    double nextGenerationTiled();
+
+    double fillMaze();
+
+    double getPaths();
+}
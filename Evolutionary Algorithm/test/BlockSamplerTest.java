@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BlockSamplerTest {
+    private static final int DRAWS = 200000;
+    private static final double TOLERANCE = 0.01;
+
+    /**
+     * Blocks are chosen in proportion to their errors, including the number of blocks which isn't a power of two
+     */
+    @Test
+    void blocksFollowErrors() {
+        double[] errors = {1, 2, 3, 4, 5, 6, 7};
+        BlockSampler sampler = new BlockSampler(errors.length, 0, Metric.Kind.RMSD);
+        sampler.update(errors);
+        assertFrequencies(new double[]{1 / 28.0, 2 / 28.0, 3 / 28.0, 4 / 28.0, 5 / 28.0, 6 / 28.0, 7 / 28.0},
+                sampler, new RandomSource(1));
+    }
+
+    /**
+     * Blocks without errors are chosen only by the exploration floor
+     */
+    @Test
+    void explorationFloorChoosesAnyBlock() {
+        BlockSampler sampler = new BlockSampler(4, 0.2, Metric.Kind.RMSD);
+        sampler.update(new double[]{0, 0, 0, 4});
+        assertFrequencies(new double[]{0.05, 0.05, 0.05, 0.85}, sampler, new RandomSource(2));
+
+        sampler = new BlockSampler(4, 0, Metric.Kind.RMSD);
+        sampler.update(new double[]{0, 0, 0, 4});
+        assertFrequencies(new double[]{0, 0, 0, 1}, sampler, new RandomSource(3));
+    }
+
+    /**
+     * Only changed blocks are updated, and the result is the same as for the new sampler
+     */
+    @Test
+    void updatesReplaceErrors() {
+        BlockSampler sampler = new BlockSampler(5, 0, Metric.Kind.RMSD);
+        sampler.update(new double[]{9, 1, 1, 1, 1});
+        sampler.update(null);
+        sampler.update(new double[]{0, 1, 1, 3, 0});
+        assertFrequencies(new double[]{0, 0.2, 0.2, 0.6, 0}, sampler, new RandomSource(4));
+    }
+
+    /**
+     * The large fractional error absorbs the error of the other block in sums,
+     * so after the large error is gone the sums are wrong until the tree is built again
+     */
+    @Test
+    void fractionalErrorsAreRebuilt() {
+        BlockSampler sampler = new BlockSampler(2, 0, Metric.Kind.SSIM);
+        double[] errors = {0, 1};
+        sampler.update(errors);
+        sampler.update(new double[]{1e16, 1});
+        for (int i = 2; i < BlockSampler.REBUILD_PERIOD; i++) {
+            sampler.update(errors);
+        }
+        assertFrequencies(new double[]{0, 1}, sampler, new RandomSource(5));
+    }
+
+    private static void assertFrequencies(double[] expected, BlockSampler sampler, RandomSource random) {
+        int[] counts = new int[expected.length];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[sampler.nextBlock(random)]++;
+        }
+        for (int block = 0; block < expected.length; block++) {
+            assertEquals(expected[block], (double) counts[block] / DRAWS, TOLERANCE, "block " + block);
+        }
+    }
+}
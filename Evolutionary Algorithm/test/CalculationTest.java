@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalculationTest {
+
+    @Test
+    void paletteHasRequestedSize() {
+        BufferedImage image = TestImages.createSourceImage(40, 30, 1);
+        for (int size : new int[]{1, 2, 7, Main.paletteSize}) {
+            Calculation.calculateColorPalette(image, size);
+            int[] palette = Calculation.getColorPalette();
+            assertEquals(size, palette.length);
+            assertEquals(size, Arrays.stream(palette).distinct().count());
+            for (int color : palette) {
+                assertEquals(0, color & ~0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    void uniformImageHasSingleColor() {
+        BufferedImage image = createImage(16, 16, 0x3A7BC4);
+        Calculation.calculateColorPalette(image, Main.paletteSize);
+        assertArrayEquals(new int[]{0x3A7BC4}, Calculation.getColorPalette());
+    }
+
+    /**
+     * The image with fewer colors than the size of the palette keeps its exact colors
+     */
+    @Test
+    void fewColorsAreKept() {
+        BufferedImage image = createImage(10, 10, 0xFF0000);
+        int[] pixels = Calculation.getPixels(image);
+        Arrays.fill(pixels, 0, 30, 0x00FF00);
+        Arrays.fill(pixels, 90, 100, 0x102030);
+        Calculation.calculateColorPalette(image, Main.paletteSize);
+        int[] palette = Calculation.getColorPalette().clone();
+        Arrays.sort(palette);
+        assertArrayEquals(new int[]{0x00FF00, 0x102030, 0xFF0000}, palette);
+    }
+
+    @Test
+    void zeroSizeTakesAllColors() {
+        BufferedImage image = TestImages.createSourceImage(20, 20, 2);
+        int[] colors = Arrays.stream(Calculation.getPixels(image)).map(pixel -> pixel & 0xFFFFFF).distinct().sorted().toArray();
+        Calculation.calculateColorPalette(image, 0);
+        assertArrayEquals(colors, Calculation.getColorPalette());
+        assertTrue(colors.length > Main.paletteSize);
+    }
+
+    private static BufferedImage createImage(int width, int height, int color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Arrays.fill(Calculation.getPixels(image), color);
+        return image;
+    }
+}
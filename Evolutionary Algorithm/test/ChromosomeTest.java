@@ -0,0 +1,183 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChromosomeTest {
+    // The image size is not divisible by the grid, so blocks have different sizes
+    private static final int IMAGE_WIDTH = 97;
+    private static final int IMAGE_HEIGHT = 83;
+    private static final int BLOCK_NUMBERS_Y = 5;
+    private static final int BLOCK_NUMBERS_X = 6;
+    private static final int BLOCK_SIZE = 4;
+
+    private static BufferedImage sourceImage;
+    private static Metric metric;
+
+    @BeforeAll
+    static void createSourceImage() {
+        sourceImage = TestImages.createSourceImage(IMAGE_WIDTH, IMAGE_HEIGHT, 1);
+        metric = new RMSDMetric(sourceImage);
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+    }
+
+    /**
+     * RMSD of mutated chromosomes is calculated only for the changed block,
+     * it must be exactly the RMSD of the whole image
+     */
+    @Test
+    void incrementalRMSDEqualsFullRMSD() {
+        RandomSource random = new RandomSource(7);
+        Chromosome parent = new Chromosome(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, random);
+        parent.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+        parent.calculateRMSD(metric);
+        assertEquals(fullRMSD(parent), parent.getRMSD(), 0.0);
+
+        for (int step = 0; step < 200; step++) {
+            ArrayList<Chromosome> children = parent.mutate(parent, 4, random);
+            Chromosome best = children.get(0);
+            for (Chromosome child : children) {
+                child.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+                child.calculateRMSD(metric);
+                assertEquals(fullRMSD(child), child.getRMSD(), 0.0);
+                if (child.getRMSD() < best.getRMSD()) {
+                    best = child;
+                }
+            }
+            // Chains of copies share arrays of genes and errors with their ancestors
+            parent = step % 2 == 0 ? best : children.get(children.size() - 1);
+        }
+    }
+
+    /**
+     * Chromosomes of whole generations are built from blocks of evaluated children,
+     * their RMSD must be exactly the RMSD of the whole image
+     */
+    @Test
+    void generationRMSDEqualsFullRMSD() {
+        RandomSource random = new RandomSource(11);
+        Chromosome chromosome = new Chromosome(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, random);
+        chromosome.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+        chromosome.calculateRMSD(metric);
+        LocalEvaluator evaluator = new LocalEvaluator(null, metric, false);
+
+        for (int generation = 0; generation < 20; generation++) {
+            chromosome = Evolution.nextGeneration(chromosome, 20, 4, 5, Chromosome.Coloring.RANDOM, null, random, sourceImage,
+                    evaluator, null, 64, new GenerationStatistics());
+            assertEquals(fullRMSD(chromosome), chromosome.getRMSD(), 0.0);
+        }
+    }
+
+    /**
+     * Errors of tiles are calculated without the image of the whole chromosome,
+     * they must be the errors of the drawn image for each metric
+     */
+    @Test
+    void tiledDifferenceEqualsImageDifference() {
+        for (Metric.Kind kind : Metric.Kind.values()) {
+            Metric tiledMetric = kind.create(sourceImage);
+            RandomSource random = new RandomSource(13);
+            Chromosome parent = new Chromosome(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, random);
+            parent.calculateRMSDByTiles(tiledMetric);
+            assertDifference(kind, imageDifference(parent, tiledMetric), parent.getRMSD());
+
+            for (int step = 0; step < 50; step++) {
+                ArrayList<Chromosome> children = parent.mutate(parent, 4, random);
+                for (Chromosome child : children) {
+                    // Mutated children are evaluated by the single changed tile
+                    child.calculateRMSDByTiles(tiledMetric);
+                    assertDifference(kind, imageDifference(child, tiledMetric), child.getRMSD());
+                }
+                parent = children.get(step % children.size());
+            }
+        }
+    }
+
+    /**
+     * Packed chromosomes are unpacked to the same genes with and without the palette
+     */
+    @Test
+    void unpackedChromosomeEqualsPacked() {
+        RandomSource random = new RandomSource(17);
+        Chromosome chromosome = new Chromosome(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, random);
+        int[] palette = Calculation.getColorPalette();
+        for (int[] packPalette : new int[][]{palette, null}) {
+            byte[] packed = chromosome.pack(packPalette);
+            Chromosome unpacked = Chromosome.unpack(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, packed, packPalette);
+            assertGenesEqual(chromosome, unpacked);
+        }
+    }
+
+    /**
+     * Codes of large blocks don't fit into two bytes of the length
+     */
+    @Test
+    void largeGenesArePacked() {
+        int blockSize = 512;
+        Chromosome chromosome = new Chromosome(1, 2, blockSize, blockSize, new RandomSource(19));
+        int[] palette = Calculation.getColorPalette();
+        assertTrue(chromosome.getGene(0, 0).getCode(palette).length > 0xFFFF);
+        byte[] packed = chromosome.pack(palette);
+        assertGenesEqual(chromosome, Chromosome.unpack(1, 2, blockSize, blockSize, packed, palette));
+    }
+
+    private static void assertGenesEqual(Chromosome expected, Chromosome actual) {
+        for (int y = 0; y < expected.getBlockNumbersY(); y++) {
+            for (int x = 0; x < expected.getBlockNumbersX(); x++) {
+                GeneTest.assertPathsEqual(expected.getGene(y, x).getPaths(), actual.getGene(y, x).getPaths());
+            }
+        }
+    }
+
+    /**
+     * RMSD is calculated by integers, so both ways give exactly the same value,
+     * other metrics may differ only by the rounding of sums
+     */
+    private static void assertDifference(Metric.Kind kind, double expected, double actual) {
+        if (kind == Metric.Kind.RMSD) {
+            assertEquals(expected, actual, 0.0);
+        } else {
+            assertTrue(Double.isFinite(actual));
+            assertEquals(expected, actual, Math.abs(expected) * 1e-9 + 1e-12, kind.name());
+        }
+    }
+
+    /**
+     * Difference of the copy of the chromosome which is drawn on the whole image
+     */
+    private static double imageDifference(Chromosome chromosome, Metric metric) {
+        Chromosome copy = copy(chromosome);
+        copy.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+        copy.calculateRMSD(metric);
+        return copy.getRMSD();
+    }
+
+    /**
+     * Chromosome with the same genes which is not drawn and evaluated yet
+     */
+    private static Chromosome copy(Chromosome chromosome) {
+        Gene[] genes = new Gene[BLOCK_NUMBERS_Y * BLOCK_NUMBERS_X];
+        for (int y = 0; y < BLOCK_NUMBERS_Y; y++) {
+            for (int x = 0; x < BLOCK_NUMBERS_X; x++) {
+                genes[y * BLOCK_NUMBERS_X + x] = chromosome.getGene(y, x);
+            }
+        }
+        return new Chromosome(BLOCK_NUMBERS_Y, BLOCK_NUMBERS_X, BLOCK_SIZE, BLOCK_SIZE, genes);
+    }
+
+    /**
+     * RMSD of the chromosome drawn from scratch
+     */
+    static double fullRMSD(Chromosome chromosome) {
+        Chromosome copy = copy(chromosome);
+        copy.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+        chromosome.calculateImage(IMAGE_WIDTH, IMAGE_HEIGHT);
+        assertEquals(Calculation.calculateRootMeanSquareDeviation(sourceImage, copy.getImage()),
+                Calculation.calculateRootMeanSquareDeviation(sourceImage, chromosome.getImage()), 0.0);
+        return Calculation.calculateRootMeanSquareDeviation(sourceImage, copy.getImage());
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EvolutionTest {
+    private static BufferedImage sourceImage;
+    private static Metric metric;
+
+    @BeforeAll
+    static void createSourceImage() {
+        sourceImage = TestImages.createSourceImage(64, 64, 2);
+        metric = new RMSDMetric(sourceImage);
+    }
+
+    /**
+     * Runs with the same seed give the same chromosomes regardless of the number of threads
+     */
+    @Test
+    void sameSeedGivesSameGenerations() {
+        List<byte[]> single = runGenerations(42, null);
+        assertEquals(single.size(), runGenerations(42, null).size());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<byte[]> parallel = runGenerations(42, pool);
+            for (int i = 0; i < single.size(); i++) {
+                assertArrayEquals(single.get(i), parallel.get(i), "Generation " + (i + 1));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The streaming selection keeps only the best chromosomes of each batch,
+     * it must choose the same descendants in the same order as the sort of the whole population
+     */
+    @Test
+    void streamingSelectionEqualsSortedSelection() {
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+        Chromosome parent = new Chromosome(4, 4, 4, 4, new RandomSource(3));
+        parent.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+        parent.calculateRMSD(metric);
+        LocalEvaluator evaluator = new LocalEvaluator(null, metric, false);
+
+        List<Chromosome> expected = Evolution.selectDescendants(parent, 30, 4, 8, Chromosome.Coloring.RANDOM, null, new RandomSource(9),
+                sourceImage, evaluator, null, 0, new GenerationStatistics());
+        assertEquals(8, expected.size());
+        for (int batchSize : new int[]{1, 2, 5, 16, 121, 1000}) {
+            List<Chromosome> streamed = Evolution.selectDescendants(parent, 30, 4, 8, Chromosome.Coloring.RANDOM, null, new RandomSource(9),
+                    sourceImage, evaluator, null, batchSize, new GenerationStatistics());
+            assertEquals(expected.size(), streamed.size(), "Batch size " + batchSize);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getRMSD(), streamed.get(i).getRMSD(), 0.0, "Batch size " + batchSize + ", descendant " + i);
+                assertArrayEquals(expected.get(i).pack(null), streamed.get(i).pack(null), "Batch size " + batchSize + ", descendant " + i);
+            }
+        }
+    }
+
+    /**
+     * Genes of the best chromosome of each generation, colors are written as RGB
+     */
+    private static List<byte[]> runGenerations(long seed, ForkJoinPool pool) {
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+        RandomSource random = new RandomSource(seed);
+        Chromosome chromosome = new Chromosome(4, 4, 4, 4, random);
+        BlockSampler sampler = new BlockSampler(16, 0.1, Metric.Kind.RMSD);
+        LocalEvaluator evaluator = new LocalEvaluator(pool, metric, false);
+
+        List<byte[]> generations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            chromosome = Evolution.nextGeneration(chromosome, 30, 4, 8, Chromosome.Coloring.RANDOM, sampler, random, sourceImage,
+                    evaluator, null, 16, new GenerationStatistics());
+            generations.add(chromosome.pack(null));
+        }
+        return generations;
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GeneTest {
+    private static final int BLOCK_SIZE_Y = 7;
+    private static final int BLOCK_SIZE_X = 9;
+
+    @BeforeAll
+    static void createPalette() {
+        Calculation.calculateColorPalette(TestImages.createSourceImage(40, 30, 1), Main.paletteSize);
+    }
+
+    /**
+     * The code with colors indexed in the palette is decoded to the same paths
+     */
+    @Test
+    void codeWithPaletteKeepsPaths() {
+        RandomSource random = new RandomSource(3);
+        int[] palette = Calculation.getColorPalette();
+        for (int i = 0; i < 100; i++) {
+            Gene gene = new Gene(BLOCK_SIZE_Y, BLOCK_SIZE_X, random);
+            Gene decoded = Gene.fromCode(BLOCK_SIZE_Y, BLOCK_SIZE_X, gene.getCode(palette), palette);
+            assertPathsEqual(gene.getPaths(), decoded.getPaths());
+        }
+    }
+
+    /**
+     * The code without the palette keeps RGB colors, so it is decoded to the same paths too
+     */
+    @Test
+    void codeWithoutPaletteKeepsPaths() {
+        RandomSource random = new RandomSource(5);
+        for (int i = 0; i < 100; i++) {
+            Gene gene = new Gene(BLOCK_SIZE_Y, BLOCK_SIZE_X, random);
+            // Colors which are not in the palette are written by the escape byte
+            int[] colors = new int[gene.getPaths().size()];
+            for (int j = 0; j < colors.length; j++) {
+                colors[j] = random.nextInt(0, 1 << 24);
+            }
+            gene = gene.withColors(colors);
+            Gene decoded = Gene.fromCode(BLOCK_SIZE_Y, BLOCK_SIZE_X, gene.getCode(null), null);
+            assertPathsEqual(gene.getPaths(), decoded.getPaths());
+        }
+    }
+
+    static void assertPathsEqual(List<Path> expected, List<Path> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Path expectedPath = expected.get(i);
+            Path actualPath = actual.get(i);
+            assertEquals(expectedPath.getColor(), actualPath.getColor());
+            assertEquals(expectedPath.size(), actualPath.size());
+            for (int j = 0; j < expectedPath.size(); j++) {
+                assertEquals(expectedPath.getY(j), actualPath.getY(j));
+                assertEquals(expectedPath.getX(j), actualPath.getX(j));
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IslandModelTest {
+    private static final int AMOUNT_OF_GENERATIONS = 6;
+
+    private static BufferedImage sourceImage;
+    private static Metric metric;
+    private static Parameters parameters;
+
+    @BeforeAll
+    static void createSourceImage() {
+        sourceImage = TestImages.createSourceImage(64, 64, 3);
+        metric = new RMSDMetric(sourceImage);
+        Calculation.calculateColorPalette(sourceImage, Main.paletteSize);
+        parameters = new Parameters("test", "test.jpg");
+        parameters.set("amountOfIslands", "3");
+        parameters.set("migrationPeriod", "2");
+        parameters.set("amountOfGenerations", String.valueOf(AMOUNT_OF_GENERATIONS));
+        parameters.set("amountOfPopulations", "20");
+        parameters.set("amountOfBestDescendants", "5");
+        parameters.set("errorGuidedMutation", "true");
+        parameters.set("blockNumbersY", "4");
+        parameters.set("blockNumbersX", "4");
+        parameters.set("blockSizeY", "4");
+        parameters.set("blockSizeX", "4");
+    }
+
+    /**
+     * Islands exchange chromosomes at fixed generations, so runs with the same seed are the same
+     */
+    @Test
+    void sameSeedGivesSameGenerations() {
+        List<byte[]> first = runIslands(new IslandModel(parameters, metric, null, null, new RandomSource(5), null, 0), 0);
+        List<byte[]> second = runIslands(new IslandModel(parameters, metric, null, null, new RandomSource(5), null, 0), 0);
+        assertEquals(AMOUNT_OF_GENERATIONS, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertArrayEquals(first.get(i), second.get(i), "Generation " + (i + 1));
+        }
+    }
+
+    /**
+     * Islands restored from the checkpoint continue as they would without the restart
+     */
+    @Test
+    void checkpointContinuesIslands(@TempDir Path folder) throws IOException {
+        List<byte[]> expected = runIslands(new IslandModel(parameters, metric, null, null, new RandomSource(8), null, 0), 0);
+
+        int restartGeneration = 3;
+        IslandModel islands = new IslandModel(parameters, metric, null, null, new RandomSource(8), null, 0);
+        Chromosome best = null;
+        for (int i = 1; i <= restartGeneration; i++) {
+            best = islands.awaitGeneration(i);
+        }
+        String checkpointPath = folder.resolve("checkpoint.bin").toString();
+        new Checkpoint(restartGeneration, 0, 0, Calculation.getColorPalette(), best,
+                islands.getIslandRandoms(), islands.getIslandChromosomes()).write(checkpointPath);
+        islands.stop();
+
+        Checkpoint checkpoint = Checkpoint.read(checkpointPath);
+        for (Chromosome chromosome : checkpoint.getIslandChromosomes()) {
+            chromosome.calculateImage(sourceImage.getWidth(), sourceImage.getHeight());
+            chromosome.calculateRMSD(metric);
+        }
+        List<byte[]> continued = runIslands(new IslandModel(parameters, metric, null, null, checkpoint.getIslandRandoms(),
+                checkpoint.getIslandChromosomes(), restartGeneration), restartGeneration);
+        for (int i = restartGeneration; i < AMOUNT_OF_GENERATIONS; i++) {
+            assertArrayEquals(expected.get(i), continued.get(i - restartGeneration), "Generation " + (i + 1));
+        }
+    }
+
+    /**
+     * The island which fails while the thread of the algorithm writes the output
+     * stops the run with its error instead of leaving the thread waiting for it
+     */
+    @Test
+    void islandFailureDuringOutputIsThrown() throws InterruptedException {
+        Parameters failingParameters = new Parameters("test", "test.jpg");
+        failingParameters.set("amountOfIslands", "3");
+        failingParameters.set("migrationPeriod", "1000");
+        failingParameters.set("amountOfGenerations", "200");
+        failingParameters.set("amountOfPopulations", "20");
+        failingParameters.set("amountOfBestDescendants", "5");
+        failingParameters.set("blockNumbersY", "4");
+        failingParameters.set("blockNumbersX", "4");
+        failingParameters.set("blockSizeY", "4");
+        failingParameters.set("blockSizeX", "4");
+        FailingMetric failingMetric = new FailingMetric(metric);
+        IslandModel islands = new IslandModel(failingParameters, failingMetric, null, null, new RandomSource(2), null, 0);
+        islands.awaitGeneration(1);
+
+        // Islands fail while the thread of the algorithm is busy with the output of the first generation
+        failingMetric.failing = true;
+        assertTrue(failingMetric.failed.await(10, TimeUnit.SECONDS));
+
+        RuntimeException error = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(RuntimeException.class, () -> {
+            for (int i = 2; i <= 200; i++) {
+                islands.awaitGeneration(i);
+            }
+        }));
+        assertSame(failingMetric.error, error);
+        islands.stop();
+    }
+
+    /**
+     * Genes of the best chromosome of each generation after the first one, colors are written as RGB
+     */
+    private static List<byte[]> runIslands(IslandModel islands, int firstGeneration) {
+        List<byte[]> generations = new ArrayList<>();
+        for (int i = firstGeneration + 1; i <= AMOUNT_OF_GENERATIONS; i++) {
+            generations.add(islands.awaitGeneration(i).pack(null));
+        }
+        islands.stop();
+        return generations;
+    }
+
+    /**
+     * Metric which throws the error when it is asked to fail
+     */
+    private static class FailingMetric implements Metric {
+        final RuntimeException error = new IllegalStateException("The metric is failed");
+        final CountDownLatch failed = new CountDownLatch(1);
+        final Metric metric;
+        volatile boolean failing;
+
+        FailingMetric(Metric metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        public Kind getKind() {
+            return metric.getKind();
+        }
+
+        @Override
+        public BufferedImage getSourceImage() {
+            return metric.getSourceImage();
+        }
+
+        @Override
+        public boolean isSeparable() {
+            return metric.isSeparable();
+        }
+
+        @Override
+        public double calculateError(int[] pixels, int offset, int width, int startY, int startX, int areaWidth, int areaHeight) {
+            if (failing) {
+                failed.countDown();
+                throw error;
+            }
+            return metric.calculateError(pixels, offset, width, startY, startX, areaWidth, areaHeight);
+        }
+
+        @Override
+        public double getDifference(double error) {
+            return metric.getDifference(error);
+        }
+    }
+}
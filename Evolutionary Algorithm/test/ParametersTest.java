@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParametersTest {
+
+    @Test
+    void seedIsNotFixedByDefault() {
+        assertFalse(new Parameters("test", "test.jpg").isFixedSeed());
+    }
+
+    @Test
+    void zeroIsValidSeed() {
+        Parameters parameters = new Parameters("test", "test.jpg");
+        parameters.set("seed", "0");
+        assertTrue(parameters.isFixedSeed());
+        assertEquals(0, parameters.getSeed());
+    }
+
+    @Test
+    void surrogateIsRejectedForOtherMetrics() {
+        Parameters parameters = new Parameters("test", "test.jpg");
+        parameters.set("surrogateFraction", "0.25");
+        parameters.validate();
+        parameters.set("metric", "ssim");
+        assertThrows(IllegalArgumentException.class, parameters::validate);
+    }
+
+    @Test
+    void averageColoringIsRejectedForOtherMetrics() {
+        Parameters parameters = new Parameters("test", "test.jpg");
+        parameters.set("coloring", "optimal");
+        parameters.validate();
+        parameters.set("metric", "delta_e");
+        assertThrows(IllegalArgumentException.class, parameters::validate);
+        parameters.set("coloring", "random");
+        parameters.validate();
+    }
+
+    @Test
+    void zeroSelectionBatchSizeIsValid() {
+        Parameters parameters = new Parameters("test", "test.jpg");
+        parameters.set("selectionBatchSize", "0");
+        assertEquals(0, parameters.getSelectionBatchSize());
+    }
+
+    @Test
+    void negativeSelectionBatchSizeIsRejected() {
+        Parameters parameters = new Parameters("test", "test.jpg");
+        assertThrows(IllegalArgumentException.class, () -> parameters.set("selectionBatchSize", "-1"));
+        assertEquals(Main.selectionBatchSize, parameters.getSelectionBatchSize());
+    }
+}
@@ -0,0 +1,68 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StopCriteriaTest {
+
+    @Test
+    void disabledCriteriaNeverStop() {
+        StopCriteria criteria = new StopCriteria(0, 0, 0, 0);
+        for (int generation = 0; generation < 100; generation++) {
+            assertNull(criteria.check(10, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void targetIsReached() {
+        StopCriteria criteria = new StopCriteria(5, 0, 0, 0);
+        assertNull(criteria.check(5.5, 0));
+        assertNotNull(criteria.check(5, 0));
+    }
+
+    /**
+     * The plateau isn't checked until there are enough generations
+     */
+    @Test
+    void plateauNeedsEnoughGenerations() {
+        StopCriteria criteria = new StopCriteria(0, 3, 1, 0);
+        assertNull(criteria.check(10, 0));
+        assertNull(criteria.check(10, 0));
+        assertNull(criteria.check(10, 0));
+        assertNotNull(criteria.check(10, 0));
+    }
+
+    /**
+     * The value is compared with the value exactly plateauGenerations generations ago,
+     * also after the history wraps around
+     */
+    @Test
+    void plateauComparesWithOldestGeneration() {
+        StopCriteria criteria = new StopCriteria(0, 3, 1, 0);
+        for (int generation = 0; generation < 3; generation++) {
+            assertNull(criteria.check(10, 0));
+        }
+        // Each of these values is compared with 10, so the improvement is 1.5
+        for (int generation = 0; generation < 3; generation++) {
+            assertNull(criteria.check(8.5, 0), "generation " + (generation + 4));
+        }
+        // Now the oldest value is 8.5 too
+        assertNotNull(criteria.check(8.5, 0));
+    }
+
+    @Test
+    void improvementOfEpsilonIsPlateau() {
+        StopCriteria criteria = new StopCriteria(0, 2, 1, 0);
+        assertNull(criteria.check(10, 0));
+        assertNull(criteria.check(9.5, 0));
+        assertNotNull(criteria.check(9, 0));
+    }
+
+    @Test
+    void timeLimitIsOver() {
+        StopCriteria criteria = new StopCriteria(0, 0, 0, 1000);
+        assertNull(criteria.check(10, 0));
+        assertNull(criteria.check(10, 999));
+        assertNotNull(criteria.check(10, 1000));
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkerTest {
+
+    @BeforeAll
+    static void createPalette() {
+        Calculation.calculateColorPalette(TestImages.createSourceImage(40, 30, 1), Main.paletteSize);
+    }
+
+    /**
+     * Genes are sent with RGB colors, whose codes of large blocks don't fit into two bytes of the length
+     */
+    @Test
+    void largeGenesAreSent() throws IOException {
+        int blockSize = 256;
+        RandomSource random = new RandomSource(23);
+        Gene[] genes = {new Gene(blockSize, blockSize, random), new Gene(3, 5, random)};
+        assertTrue(genes[0].getCode(null).length > 0xFFFF);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (Gene gene : genes) {
+            Worker.writeGene(output, gene);
+        }
+        output.flush();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        GeneTest.assertPathsEqual(genes[0].getPaths(), Worker.readGene(input, blockSize, blockSize).getPaths());
+        GeneTest.assertPathsEqual(genes[1].getPaths(), Worker.readGene(input, 3, 5).getPaths());
+        // The whole stream is read, so the next gene would start at the right place
+        assertEquals(-1, input.read());
+    }
+}